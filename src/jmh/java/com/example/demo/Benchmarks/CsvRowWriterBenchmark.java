@@ -0,0 +1,50 @@
+package com.example.demo.Benchmarks;
+
+import com.example.demo.Csv.CsvRowWriter;
+import com.example.demo.Csv.MalformedValueReport;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// one CSV line to its message: tokenizing, typing, writing the JSON and computing the key, per row
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvRowWriterBenchmark {
+    private static final int LINES = 1000;
+
+    @Param({"5", "20", "100"})
+    private int columns;
+
+    @Param({"TEXT", "MIXED"})
+    private String types;
+
+    private String[] lines;
+    private CsvRowWriter.Session session;
+
+    @Setup
+    public void setup() {
+        Map<String, PropsDataService.PropsData> propsData = Fixtures.propsData(columns, types);
+        ResourceDescriptionService.ResourceSchema schema = Fixtures.schema("CSV", propsData);
+        lines = Fixtures.csvLines(propsData, LINES);
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        session = schema.rowWriter().newSession(schema.csvFormat(), "{\"resourceId\":1}\n".getBytes(),
+                new MalformedValueReport(), keyGenerator, Fixtures.metrics().resource(Fixtures.RESOURCE_ID, "CSV"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void writeRows(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(session.write(line));
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.demo.Benchmarks;
+
+import com.example.demo.Avro.AvroFormatReader;
+import com.example.demo.Csv.CsvFormatReader;
+import com.example.demo.Formats.FormatReaders;
+import com.example.demo.Json.JsonFormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// generated test data for the benchmarks: resources with a given number and mix of columns, their rows as CSV
+// lines, a JSON array or an Avro file, zips holding them, and services that answer from memory instead of the database.
+final class Fixtures {
+    static final int RESOURCE_ID = 1;
+    private static final String[] MIXED_TYPES = {"int", "float", "boolean", "string"};
+
+    private Fixtures() {
+    }
+
+    // TEXT makes every column a string, MIXED cycles through int, float, boolean and string
+    static Map<String, PropsDataService.PropsData> propsData(int columns, String types) {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        for (int i = 0; i < columns; i++) {
+            String type = "TEXT".equals(types) ? "string" : MIXED_TYPES[i % MIXED_TYPES.length];
+            propsData.put("field" + i, new PropsDataService.PropsData(type, null));
+        }
+        return propsData;
+    }
+
+    static ResourceDescriptionService.ResourceSchema schema(String fileType,
+                                                           Map<String, PropsDataService.PropsData> propsData) {
+        return new ResourceDescriptionService.ResourceSchema(RESOURCE_ID, "1", "benchmark", fileType,
+                new ResourceDescriptionService.CsvFormat(",", null), propsData);
+    }
+
+    static String[] csvLines(Map<String, PropsDataService.PropsData> propsData, int rows) {
+        Random random = new Random(rows);
+        String[] lines = new String[rows];
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            for (PropsDataService.PropsData field : propsData.values()) {
+                if (line.length() > 0) {
+                    line.append(',');
+                }
+                line.append(value(field.type(), random));
+            }
+            lines[row] = line.toString();
+        }
+        return lines;
+    }
+
+    static byte[] csv(Map<String, PropsDataService.PropsData> propsData, int rows) {
+        StringBuilder csv = new StringBuilder(String.join(",", propsData.keySet())).append('\n');
+        for (String line : csvLines(propsData, rows)) {
+            csv.append(line).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] jsonArray(Map<String, PropsDataService.PropsData> propsData, int elements) {
+        Random random = new Random(elements);
+        StringBuilder json = new StringBuilder("[");
+        for (int element = 0; element < elements; element++) {
+            json.append(element == 0 ? "{" : ",{");
+            boolean first = true;
+            for (Map.Entry<String, PropsDataService.PropsData> field : propsData.entrySet()) {
+                json.append(first ? "\"" : ",\"").append(field.getKey()).append("\":");
+                String value = value(field.getValue().type(), random);
+                json.append("string".equals(field.getValue().type()) ? "\"" + value + "\"" : value);
+                first = false;
+            }
+            json.append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    // an Avro container file with the same rows as csv(), the fields typed like their PROPS_DATA, and as many
+    // string fields that are not in PROPS_DATA, which the reader has to skip
+    static byte[] avro(Map<String, PropsDataService.PropsData> propsData, int rows) throws IOException {
+        SchemaBuilder.FieldAssembler<Schema> fields = SchemaBuilder.record("Row").fields();
+        for (Map.Entry<String, PropsDataService.PropsData> field : propsData.entrySet()) {
+            fields = switch (field.getValue().type()) {
+                case "int" -> fields.requiredInt(field.getKey());
+                case "float" -> fields.requiredFloat(field.getKey());
+                case "boolean" -> fields.requiredBoolean(field.getKey());
+                default -> fields.requiredString(field.getKey());
+            };
+        }
+        for (int i = 0; i < propsData.size(); i++) {
+            fields = fields.requiredString("unused" + i);
+        }
+        Schema schema = fields.endRecord();
+
+        Random random = new Random(rows);
+        Random unused = new Random(-rows);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.setCodec(CodecFactory.deflateCodec(1));
+            writer.create(schema, bytes);
+            GenericRecord record = new GenericData.Record(schema);
+            for (int row = 0; row < rows; row++) {
+                int position = 0;
+                for (PropsDataService.PropsData field : propsData.values()) {
+                    String value = value(field.type(), random);
+                    record.put(position++, switch (field.type()) {
+                        case "int" -> Integer.parseInt(value);
+                        case "float" -> Float.parseFloat(value);
+                        case "boolean" -> Boolean.parseBoolean(value);
+                        default -> value;
+                    });
+                }
+                for (int i = 0; i < propsData.size(); i++) {
+                    record.put(position++, value("string", unused));
+                }
+                writer.append(record);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String value(String type, Random random) {
+        return switch (type) {
+            case "int" -> Integer.toString(random.nextInt(1_000_000));
+            case "float" -> Float.toString(random.nextInt(1_000_000) / 100f);
+            case "boolean" -> Boolean.toString(random.nextBoolean());
+            default -> "text" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+        };
+    }
+
+    // meters that are kept in memory only
+    static PipelineMetrics metrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry(), 1024);
+    }
+
+    // every format reader, keyed with SHA-256 hex like the default configuration
+    static FormatReaders formatReaders(RowConversionEngine rowConversionEngine) {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        return new FormatReaders(List.of(
+                new CsvFormatReader(rowConversionEngine, keyGenerator, ZipProcessor.EntryOrdering.PER_ENTRY),
+                new JsonFormatReader(keyGenerator, rowConversionEngine),
+                new AvroFormatReader(keyGenerator, rowConversionEngine)));
+    }
+
+    // a zip like the ones the pipeline gets: metadata.json and the data entries, stored or deflated
+    static Path zip(Map<String, byte[]> dataEntries, boolean compressed) throws IOException {
+        Path path = Files.createTempFile("benchmark", ".zip");
+        path.toFile().deleteOnExit();
+        try (OutputStream file = Files.newOutputStream(path);
+             ZipOutputStream zip = new ZipOutputStream(file)) {
+            putEntry(zip, "metadata.json",
+                    ("{\"resourceId\":" + RESOURCE_ID + "}").getBytes(StandardCharsets.UTF_8), compressed);
+            for (Map.Entry<String, byte[]> entry : dataEntries.entrySet()) {
+                putEntry(zip, entry.getKey(), entry.getValue(), compressed);
+            }
+        }
+        return path;
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, byte[] content, boolean compressed)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (!compressed) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    // answers every lookup with the given schema, the database is never queried
+    static ResourceDescriptionService resourceDescriptionService(ResourceDescriptionService.ResourceSchema schema) {
+        JdbcTemplate noDatabase = new JdbcTemplate() {
+            @Override
+            public void query(String sql, RowCallbackHandler handler) {
+            }
+        };
+        PropsDataService propsDataService = new PropsDataService(noDatabase, "ROWID") {
+            @Override
+            public Map<Integer, Map<String, PropsData>> getAllPropsData() {
+                return Map.of(RESOURCE_ID, schema.propsData());
+            }
+
+            @Override
+            public Map<String, PropsData> getPropsData(int resourceId) {
+                return schema.propsData();
+            }
+
+            @Override
+            public List<String> getPropsFieldNames(int resourceId) {
+                return schema.fieldNames();
+            }
+        };
+        return new ResourceDescriptionService(noDatabase, propsDataService, 100, Duration.ofHours(1), "ORA_ROWSCN",
+                "") {
+            @Override
+            public ResourceSchema getSchema(int resourceId) {
+                return resourceId == RESOURCE_ID ? schema : null;
+            }
+        };
+    }
+}
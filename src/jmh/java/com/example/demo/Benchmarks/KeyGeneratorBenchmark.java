@@ -0,0 +1,53 @@
+package com.example.demo.Benchmarks;
+
+import com.example.demo.Output.KeyGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// hashing the key input of one row, Sha256HexBenchmark is the baseline
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyGeneratorBenchmark {
+
+    @Param({"SHA_256", "MURMUR3_128"})
+    private KeyGenerator.Algorithm algorithm;
+
+    @Param({"HEX", "BASE64"})
+    private KeyGenerator.Encoding encoding;
+
+    @Param({"32", "512"})
+    private int inputLength;
+
+    private KeyGenerator keyGenerator;
+    private String input;
+    private char[] line;
+
+    @Setup
+    public void setup() {
+        keyGenerator = new KeyGenerator(algorithm, encoding);
+        Random random = new Random(inputLength);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < inputLength) {
+            text.append(random.nextInt(1_000_000));
+        }
+        input = text.substring(0, inputLength);
+        line = input.toCharArray();
+    }
+
+    @Benchmark
+    public String keyFromString() {
+        return keyGenerator.key(input);
+    }
+
+    // the way the CSV writer hashes, straight from the line buffer
+    @Benchmark
+    public String keyFromBuffer() {
+        return keyGenerator.hasher().append(line, 0, line.length).finish();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.Benchmarks;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// how keys were computed before the KeyGenerator: a new MessageDigest, the input encoded to a new byte array and
+// a hex String per record. the baseline for KeyGeneratorBenchmark.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sha256HexBenchmark {
+
+    @Param({"32", "512"})
+    private int inputLength;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(inputLength);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < inputLength) {
+            text.append(random.nextInt(1_000_000));
+        }
+        input = text.substring(0, inputLength);
+    }
+
+    @Benchmark
+    public String sha256Hex() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Hex.encodeHexString(digest.digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.demo.Benchmarks;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// the JSON reader over a zip with one JSON array, from the opened zip to the keyed messages
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipJsonBenchmark {
+
+    @Param({"10", "100000"})
+    private int elements;
+
+    @Param({"false", "true"})
+    private boolean compressed;
+
+    private final byte[] valuePrefix = "{\"resourceId\":1}\n".getBytes();
+    private Path zipPath;
+    private ZipArchive archive;
+    private RowConversionEngine rowConversionEngine;
+    private ZipProcessor zipProcessor;
+    private FormatReader reader;
+    private ResourceDescriptionService.ResourceSchema schema;
+    private PipelineMetrics.ResourceMeters meters;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, PropsDataService.PropsData> propsData = Fixtures.propsData(10, "MIXED");
+        zipPath = Fixtures.zip(Map.of("data.json", Fixtures.jsonArray(propsData, elements)), compressed);
+        archive = ZipArchive.open(zipPath.toString());
+        rowConversionEngine = new RowConversionEngine(0, 5000, 0, false);
+        zipProcessor = new ZipProcessor(0, 0);
+        reader = Fixtures.formatReaders(rowConversionEngine).forFileType("JSON");
+        schema = Fixtures.schema("JSON", propsData);
+        meters = Fixtures.metrics().resource(Fixtures.RESOURCE_ID, "JSON");
+    }
+
+    @Benchmark
+    public long processZipJson(Blackhole blackhole) throws IOException {
+        return zipProcessor.process(archive, reader, schema, valuePrefix, meters, blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        archive.close();
+        zipProcessor.shutdown();
+        rowConversionEngine.shutdown();
+        Files.deleteIfExists(zipPath);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo.Benchmarks;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.OutputStage;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipPipeline;
+import com.example.demo.Services.ZipProcessor;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// one input message end to end: opening the generated zip, the metadata, converting every row and producing it
+// through the OutputStage into a mock producer that acknowledges right away. the database is stubbed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZipPipelineBenchmark {
+
+    @Param({"CSV", "CSV_GZIP", "AVRO", "JSON"})
+    private String fileType;
+
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"false", "true"})
+    private boolean compressed;
+
+    private Path zipPath;
+    private String message;
+    private MockProducer<String, byte[]> producer;
+    private RowConversionEngine rowConversionEngine;
+    private ZipProcessor zipProcessor;
+    private OutputStage outputStage;
+    private ZipPipeline pipeline;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, PropsDataService.PropsData> propsData = Fixtures.propsData(20, "MIXED");
+        Map<String, byte[]> dataEntries = switch (fileType) {
+            case "CSV" -> Map.of("data.csv", Fixtures.csv(propsData, rows));
+            case "CSV_GZIP" -> Map.of("data.csv.gz", Fixtures.gzip(Fixtures.csv(propsData, rows)));
+            case "AVRO" -> Map.of("data.avro", Fixtures.avro(propsData, rows));
+            default -> Map.of("data.json", Fixtures.jsonArray(propsData, rows));
+        };
+        zipPath = Fixtures.zip(dataEntries, compressed);
+        message = "{\"zipPath\":\"" + zipPath + "\"}";
+
+        // kept open across sends, the template would close it after every one
+        PipelineMetrics metrics = Fixtures.metrics();
+        producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        outputStage = new OutputStage(new KafkaTemplate<>(new MockProducerFactory<>(() -> producer)),
+                "output_results", 10000, Duration.ofMinutes(1), metrics);
+        rowConversionEngine = new RowConversionEngine(0, 5000, 0, false);
+        zipProcessor = new ZipProcessor(0, 0);
+        pipeline = new ZipPipeline(Fixtures.resourceDescriptionService(Fixtures.schema(fileType, propsData)),
+                zipProcessor, Fixtures.formatReaders(rowConversionEngine), metrics);
+    }
+
+    @Benchmark
+    public boolean processZip() {
+        return pipeline.processZip(message, outputStage::newDelivery);
+    }
+
+    // the mock producer keeps every record it was sent
+    @TearDown(Level.Invocation)
+    public void clearProducer() {
+        producer.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        zipProcessor.shutdown();
+        rowConversionEngine.shutdown();
+        Files.deleteIfExists(zipPath);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.demo.Avro;
+
+import com.example.demo.Csv.CsvRowWriter;
+import com.example.demo.Csv.MalformedValueReport;
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// the Avro container files (.avro) of the zip. Avro stores whole records, so every field of a record is read from
+// the file, but the reader schema holds only the PROPS_DATA fields: the decoder steps over the others without
+// building their values. the values keep their Avro type, numbers and booleans are written by the row writer of the
+// resource as they are, and everything is typed by PROPS_DATA and keyed like CSV fields, so the same rows give the
+// same messages and keys whichever of the two formats they came in. the file is read as a stream, block by block,
+// it never has to be extracted from the zip. the records are decoded on the calling thread and written in batches
+// by the RowConversionEngine, like CSV lines.
+@Component
+public class AvroFormatReader implements FormatReader {
+    private static final Logger logger = LoggerFactory.getLogger(AvroFormatReader.class);
+
+    private final KeyGenerator keyGenerator;
+    private final RowConversionEngine rowConversionEngine;
+
+    @Autowired
+    public AvroFormatReader(KeyGenerator keyGenerator, RowConversionEngine rowConversionEngine) {
+        this.keyGenerator = keyGenerator;
+        this.rowConversionEngine = rowConversionEngine;
+    }
+
+    @Override
+    public Set<String> fileTypes() {
+        return Set.of("AVRO");
+    }
+
+    @Override
+    public List<ZipArchiveEntry> dataEntries(ZipArchive archive) throws IOException {
+        List<ZipArchiveEntry> entries = archive.entries(e -> e.getName().endsWith(".avro"));
+        if (entries.isEmpty()) {
+            throw new FileNotFoundException("Avro file not found in zip");
+        }
+        return entries;
+    }
+
+    @Override
+    public long read(ZipArchive archive, ZipArchiveEntry entry, ResourceDescriptionService.ResourceSchema schema,
+                     byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, long skipRows,
+                     ZipProcessor.ChunkSink sink) throws IOException {
+        List<String> fieldNames = schema.fieldNames();
+        CsvRowWriter rowWriter = schema.rowWriter();
+        MalformedValueReport malformedValues = new MalformedValueReport();
+        GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>();
+        long rows;
+        try (InputStream is = archive.open(entry);
+             DataFileStream<GenericRecord> records = new DataFileStream<>(is, datumReader)) {
+            Schema projection = project(records.getSchema(), fieldNames, entry.getName());
+            datumReader.setExpected(projection);
+            // where each PROPS_DATA field is in the projected record, -1 if the file doesn't have it
+            int[] positions = new int[fieldNames.size()];
+            for (int i = 0; i < positions.length; i++) {
+                Schema.Field field = projection.getField(fieldNames.get(i));
+                positions[i] = field == null ? -1 : field.pos();
+            }
+
+            RecordValues values = new RecordValues(records, positions);
+            // skipped records are decoded like the others, only their PROPS_DATA values are built
+            values.skip(skipRows);
+            // every batch gets its own writer session, it is reused for all rows of the batch
+            rows = rowConversionEngine.convert(values, () -> {
+                CsvRowWriter.Session session = rowWriter.newSession(schema.csvFormat(), valuePrefix, malformedValues,
+                        keyGenerator, meters);
+                return session::write;
+            }, sink, true);
+        } catch (RowConversionEngine.ConversionException e) {
+            // the chunks before the record were sent already, the entry and the zip fail rather than end early
+            throw new IOException("Avro conversion failed in " + entry.getName() + ": " + e.getMessage(), e);
+        }
+        if (malformedValues.count() > 0) {
+            logger.warn("Avro file {} had {} malformed values, sent as text. first: {}", entry.getName(),
+                    malformedValues.count(), malformedValues.firstSample());
+        }
+        return rows;
+    }
+
+    // the values of the records in PROPS_DATA order. the record is reused, its values are copied into an array of
+    // their own before the next one is decoded.
+    private static final class RecordValues implements RowConversionEngine.RowSource<Object[]> {
+        private final DataFileStream<GenericRecord> records;
+        private final int[] positions;
+        private GenericRecord record;
+
+        RecordValues(DataFileStream<GenericRecord> records, int[] positions) {
+            this.records = records;
+            this.positions = positions;
+        }
+
+        void skip(long count) throws IOException {
+            for (long skipped = 0; skipped < count && records.hasNext(); skipped++) {
+                record = records.next(record);
+            }
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            if (!records.hasNext()) {
+                return null;
+            }
+            record = records.next(record);
+            Object[] values = new Object[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                values[i] = positions[i] < 0 ? null : value(record.get(positions[i]));
+            }
+            return values;
+        }
+    }
+
+    // the writer schema cut down to the PROPS_DATA fields. fields keep their writer schema, so no value is
+    // converted by the schema resolution, a field that is not in the file is null in every row.
+    private static Schema project(Schema writer, List<String> fieldNames, String entryName) {
+        List<Schema.Field> fields = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String fieldName : fieldNames) {
+            Schema.Field field = writer.getField(fieldName);
+            if (field == null) {
+                missing.add(fieldName);
+            } else {
+                fields.add(new Schema.Field(field, field.schema()));
+            }
+        }
+        if (!missing.isEmpty()) {
+            logger.warn("Avro file {} has no field {}, sent as null", entryName, missing);
+        }
+        return Schema.createRecord(writer.getName(), writer.getDoc(), writer.getNamespace(), false, fields);
+    }
+
+    // numbers and booleans as they are, for the row writer to take without their text. anything else as the text a
+    // CSV export would have for it, records, arrays, maps and bytes as their Avro JSON. strings are copied, the
+    // decoder reuses their buffers.
+    private static Object value(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof CharSequence || value instanceof GenericData.EnumSymbol) {
+            return value.toString();
+        }
+        return GenericData.get().toString(value);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.demo.Csv;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+// the CSV entries of the zip, plain (.csv) or compressed on their own inside the zip, gzip (.csv.gz) or zstd
+// (.csv.zst). the compression is told by the entry name, CSV_GZIP and CSV_ZSTD only let RESOURCE_DESCRIPTION say
+// what the upstream sends. zstd is decoded by zstd-jni, which kafka-clients brings along for its own compression.
+@Component
+public class CsvFormatReader implements FormatReader {
+    private static final Logger logger = LoggerFactory.getLogger(CsvFormatReader.class);
+    private static final int DECOMPRESSION_BUFFER = 64 * 1024;
+
+    private final RowConversionEngine rowConversionEngine;
+    private final KeyGenerator keyGenerator;
+    // PER_ENTRY keeps the rows of every entry in file order, UNORDERED hands them over as they are converted
+    private final boolean rowsInFileOrder;
+
+    @Autowired
+    public CsvFormatReader(RowConversionEngine rowConversionEngine, KeyGenerator keyGenerator,
+                           @Value("${zip.entries.ordering:PER_ENTRY}") ZipProcessor.EntryOrdering entryOrdering) {
+        this.rowConversionEngine = rowConversionEngine;
+        this.keyGenerator = keyGenerator;
+        this.rowsInFileOrder = entryOrdering == ZipProcessor.EntryOrdering.PER_ENTRY;
+    }
+
+    @Override
+    public Set<String> fileTypes() {
+        return Set.of("CSV", "CSV_GZIP", "CSV_ZSTD");
+    }
+
+    @Override
+    public List<ZipArchiveEntry> dataEntries(ZipArchive archive) throws IOException {
+        List<ZipArchiveEntry> entries = archive.entries(e -> e.getName().endsWith(".csv")
+                || e.getName().endsWith(".csv.gz") || e.getName().endsWith(".csv.zst"));
+        if (entries.isEmpty()) {
+            throw new FileNotFoundException("CSV not found in zip");
+        }
+        return entries;
+    }
+
+    // the entry is streamed to the sink in chunks. the rows are converted by the RowConversionEngine, which holds
+    // back the reader when the sink falls behind, so only a bounded number of chunks is on the heap at a time.
+    // each row is written straight to its message bytes, valuePrefix in front of the row JSON.
+    @Override
+    public long read(ZipArchive archive, ZipArchiveEntry csvEntry, ResourceDescriptionService.ResourceSchema schema,
+                     byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, long skipRows,
+                     ZipProcessor.ChunkSink sink) throws IOException {
+        ResourceDescriptionService.CsvFormat csvFormat = schema.csvFormat();
+        CsvRowWriter rowWriter = schema.rowWriter();
+
+        try (InputStream is = decompress(csvEntry.getName(), archive.open(csvEntry));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+
+            reader.readLine();
+            for (long skipped = 0; skipped < skipRows && reader.readLine() != null; skipped++) {
+                // sent before the zip was interrupted
+            }
+            MalformedValueReport malformedValues = new MalformedValueReport();
+            // every batch gets its own writer session, it is reused for all lines of the batch
+            long rows = rowConversionEngine.convert(reader, () -> {
+                CsvRowWriter.Session session = rowWriter.newSession(csvFormat, valuePrefix, malformedValues,
+                        keyGenerator, meters);
+                return session::write;
+            }, sink, rowsInFileOrder);
+            if (malformedValues.count() > 0) {
+                logger.warn("CSV {} had {} malformed values, sent as text. first: {}", csvEntry.getName(),
+                        malformedValues.count(), malformedValues.firstSample());
+            }
+            return rows;
+        } catch (RowConversionEngine.ConversionException e) {
+            // the chunks before the line were sent already, the entry and the zip fail rather than end early
+            throw new IOException("CSV parsing failed in " + csvEntry.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean rowsInFileOrder() {
+        return rowsInFileOrder;
+    }
+
+    private static InputStream decompress(String name, InputStream is) throws IOException {
+        try {
+            if (name.endsWith(".gz")) {
+                return new GZIPInputStream(is, DECOMPRESSION_BUFFER);
+            }
+            if (name.endsWith(".zst")) {
+                return new ZstdCompressorInputStream(new BufferedInputStream(is, DECOMPRESSION_BUFFER));
+            }
+            return is;
+        } catch (IOException | RuntimeException e) {
+            is.close();
+            throw e;
+        }
+    }
+}
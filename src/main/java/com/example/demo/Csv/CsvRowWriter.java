@@ -0,0 +1,331 @@
+package com.example.demo.Csv;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.ZipProcessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// writes the rows of one resource straight to JSON bytes, without building a Map per row and parsing it back. it
+// is compiled once per resource from its PROPS_DATA and kept in the ResourceSchema, so it is only built again when
+// the fields change: the field names are pre-encoded and every column index is mapped to its type and
+// FIELD_SPECIAL_TYPE, so a row is tokenized, typed and written in a single pass without looking anything up by
+// name. the same pass computes the key: the hash of the values in field name order, concatenated, which is what
+// the key was computed from when rows went through a TreeMap.
+//
+// FIELD_SPECIAL_TYPE holds any of these, separated by commas. other values are ignored with a warning.
+//   TRIM           whitespace around the value is removed before it is typed
+//   EMPTY_AS_NULL  an empty value is written as null, instead of an empty string or a malformed number
+//   JSON           the value is JSON text and is embedded as JSON whatever its FIELD_TYPE is. a value that is not
+//                  valid JSON is reported as malformed and written as a string
+public class CsvRowWriter {
+    private static final Logger logger = LoggerFactory.getLogger(CsvRowWriter.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // Float.toString and Double.toString of the same value only disagree above this on JDK 17
+    private static final float EXACT_KEY_FLOAT_LIMIT = 1e19f;
+
+    private enum FieldType { TEXT, INT, FLOAT, BOOLEAN, JSON }
+
+    private enum SpecialType { TRIM, EMPTY_AS_NULL, JSON }
+
+    private final SerializedString[] names;
+    private final String[] fieldNames;
+    private final String[] typeNames;
+    private final FieldType[] types;
+    private final boolean[] trim;
+    private final boolean[] emptyAsNull;
+    private final int[] keyOrder;
+
+    public CsvRowWriter(List<String> fieldNames, Map<String, PropsDataService.PropsData> propsData) {
+        int count = fieldNames.size();
+        this.fieldNames = fieldNames.toArray(new String[0]);
+        this.names = new SerializedString[count];
+        this.typeNames = new String[count];
+        this.types = new FieldType[count];
+        this.trim = new boolean[count];
+        this.emptyAsNull = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = new SerializedString(this.fieldNames[i]);
+            PropsDataService.PropsData meta = propsData.get(this.fieldNames[i]);
+            Set<SpecialType> specialTypes = specialTypes(this.fieldNames[i], meta == null ? null : meta.specialType());
+            typeNames[i] = meta == null ? null : meta.type();
+            trim[i] = specialTypes.contains(SpecialType.TRIM);
+            emptyAsNull[i] = specialTypes.contains(SpecialType.EMPTY_AS_NULL);
+            types[i] = specialTypes.contains(SpecialType.JSON) ? FieldType.JSON
+                    : meta == null ? FieldType.TEXT : switch (meta.type()) {
+                        case "float" -> FieldType.FLOAT;
+                        case "boolean" -> FieldType.BOOLEAN;
+                        case "int", "integer" -> FieldType.INT;
+                        default -> FieldType.TEXT;
+                    };
+        }
+        this.keyOrder = IntStream.range(0, count).boxed()
+                .sorted(Comparator.comparing(i -> this.fieldNames[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static Set<SpecialType> specialTypes(String fieldName, String specialType) {
+        Set<SpecialType> specialTypes = EnumSet.noneOf(SpecialType.class);
+        if (specialType == null) {
+            return specialTypes;
+        }
+        for (String name : specialType.split(",")) {
+            String trimmed = name.trim().toUpperCase(Locale.ROOT);
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                specialTypes.add(SpecialType.valueOf(trimmed));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown FIELD_SPECIAL_TYPE {} of field {}, ignored", trimmed, fieldName);
+            }
+        }
+        return specialTypes;
+    }
+
+    // a writer for one thread. valuePrefix is written in front of every row, so the returned bytes can be
+    // produced as they are.
+    public Session newSession(ResourceDescriptionService.CsvFormat csvFormat, byte[] valuePrefix,
+                              MalformedValueReport malformedValues, KeyGenerator keyGenerator,
+                              PipelineMetrics.ResourceMeters meters) {
+        return new Session(csvFormat, valuePrefix, malformedValues, keyGenerator, meters);
+    }
+
+    public class Session {
+        private final CsvTokenizer tokenizer;
+        private final FieldParser parser = new FieldParser();
+        private final byte[] valuePrefix;
+        private final MalformedValueReport malformedValues;
+        private final KeyGenerator keyGenerator;
+        private final PipelineMetrics.ResourceMeters meters;
+        private final ByteArrayBuilder out = new ByteArrayBuilder();
+        private final JsonGenerator generator;
+        // what each column turned into, read back when the key is computed
+        private final FieldType[] written = new FieldType[names.length];
+        private final boolean[] present = new boolean[names.length];
+        private final int[] starts = new int[names.length];
+        private final int[] ends = new int[names.length];
+        private final int[] intValues = new int[names.length];
+        private final float[] floatValues = new float[names.length];
+        private final boolean[] booleanValues = new boolean[names.length];
+        // the values of the row write(Object[]) is writing, and which of them are written without their text
+        private final boolean[] typed = new boolean[names.length];
+        private Object[] typedValues;
+        private CharSequence[] texts = new CharSequence[0];
+        private TokenBuffer jsonValue;
+        private long rows;
+
+        private Session(ResourceDescriptionService.CsvFormat csvFormat, byte[] valuePrefix,
+                        MalformedValueReport malformedValues, KeyGenerator keyGenerator,
+                        PipelineMetrics.ResourceMeters meters) {
+            this.tokenizer = new CsvTokenizer(csvFormat.delimiter(), csvFormat.endLine());
+            this.valuePrefix = valuePrefix;
+            this.malformedValues = malformedValues;
+            this.keyGenerator = keyGenerator;
+            this.meters = meters;
+            try {
+                this.generator = JSON_FACTORY.createGenerator(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            generator.setRootValueSeparator(null);
+        }
+
+        public ZipProcessor.OutputRecord write(String line) {
+            // one row in rowSampleInterval is timed stage by stage
+            boolean sampled = rows++ % meters.rowSampleInterval() == 0;
+            long started = sampled ? System.nanoTime() : 0;
+            try {
+                // missing columns at the end of the line are null, for example, if phone number is empty
+                int fieldCount = tokenizer.tokenize(line);
+                return writeRow(fieldCount, sampled, started);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to parse line: " + line, e);
+            }
+        }
+
+        // a row of a format that reads typed values, in the field order of the writer. an int, float or boolean
+        // value of a field of that type is written as it is, without going through its text. any other value is
+        // typed from its text like a CSV field and null values are written as null, so a row gives the same
+        // message and key as the same row in a CSV file.
+        public ZipProcessor.OutputRecord write(Object[] values) {
+            boolean sampled = rows++ % meters.rowSampleInterval() == 0;
+            long started = sampled ? System.nanoTime() : 0;
+            if (texts.length != values.length) {
+                texts = new CharSequence[values.length];
+            }
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (i < names.length) {
+                    typed[i] = isTyped(i, value);
+                }
+                // a typed value only has to be there for the tokenizer, its text is never read
+                texts[i] = value == null ? null : i < names.length && typed[i] ? "" : value.toString();
+            }
+            typedValues = values;
+            try {
+                return writeRow(tokenizer.load(texts), sampled, started);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write row: " + Arrays.toString(values), e);
+            } finally {
+                typedValues = null;
+            }
+        }
+
+        // whether the value can be written as the type of the field as it is. the text of a float parses back to
+        // the same float, a double is rounded to the nearest float from its text and goes through it.
+        private boolean isTyped(int field, Object value) {
+            return switch (types[field]) {
+                case INT -> value instanceof Integer || value instanceof Short || value instanceof Byte
+                        || value instanceof Long number && number == (int) (long) number;
+                case FLOAT -> value instanceof Float number && Float.isFinite(number);
+                case BOOLEAN -> value instanceof Boolean;
+                case TEXT, JSON -> false;
+            };
+        }
+
+        private ZipProcessor.OutputRecord writeRow(int fieldCount, boolean sampled, long started)
+                throws IOException {
+            long tokenized = sampled ? System.nanoTime() : 0;
+            out.write(valuePrefix);
+            generator.writeStartObject();
+            for (int i = 0; i < names.length; i++) {
+                generator.writeFieldName(names[i]);
+                present[i] = i < fieldCount && !tokenizer.isNull(i)
+                        && (typedValues != null && typed[i] ? writeTyped(i) : writeValue(i));
+                if (!present[i]) {
+                    generator.writeNull();
+                }
+            }
+            generator.writeEndObject();
+            generator.flush();
+            byte[] value = out.toByteArray();
+            out.reset();
+            long serialized = sampled ? System.nanoTime() : 0;
+            String key = computeKey();
+            if (sampled) {
+                meters.rowParsed(tokenized - started);
+                meters.rowSerialized(serialized - tokenized);
+                meters.rowHashed(System.nanoTime() - serialized);
+            }
+            return new ZipProcessor.OutputRecord(key, value);
+        }
+
+        // values that don't match the declared type are kept as text and reported instead of failing the line.
+        // returns false, without writing anything, for a value that is null because of EMPTY_AS_NULL.
+        private boolean writeValue(int field) throws IOException {
+            char[] buffer = tokenizer.buffer();
+            int start = tokenizer.start(field);
+            int end = tokenizer.end(field);
+            if (trim[field]) {
+                while (start < end && buffer[start] <= ' ') {
+                    start++;
+                }
+                while (end > start && buffer[end - 1] <= ' ') {
+                    end--;
+                }
+            }
+            if (emptyAsNull[field] && start == end) {
+                return false;
+            }
+            starts[field] = start;
+            ends[field] = end;
+            FieldType type = types[field];
+            boolean parsed = switch (type) {
+                case INT -> parser.parseInt(buffer, start, end);
+                case FLOAT -> parser.parseFloat(buffer, start, end);
+                case BOOLEAN -> parser.parseBoolean(buffer, start, end);
+                case JSON -> parseJson(buffer, start, end);
+                case TEXT -> true;
+            };
+            if (!parsed) {
+                malformedValues.record(fieldNames[field], typeNames[field], new String(buffer, start, end - start));
+                // a boolean that is neither true nor false keeps the Boolean.parseBoolean result
+                type = type == FieldType.BOOLEAN ? FieldType.BOOLEAN : FieldType.TEXT;
+            }
+            written[field] = type;
+            switch (type) {
+                case INT -> generator.writeNumber(intValues[field] = parser.intValue());
+                case FLOAT -> generator.writeNumber(floatValues[field] = parser.floatValue());
+                case BOOLEAN -> generator.writeBoolean(booleanValues[field] = parser.booleanValue());
+                case JSON -> jsonValue.serialize(generator);
+                case TEXT -> generator.writeString(buffer, start, end - start);
+            }
+            return true;
+        }
+
+        // a value isTyped took, written and kept for the key like a parsed field
+        private boolean writeTyped(int field) throws IOException {
+            Object value = typedValues[field];
+            written[field] = types[field];
+            switch (types[field]) {
+                case INT -> generator.writeNumber(intValues[field] = ((Number) value).intValue());
+                case FLOAT -> generator.writeNumber(floatValues[field] = (Float) value);
+                case BOOLEAN -> generator.writeBoolean(booleanValues[field] = (Boolean) value);
+                default -> throw new IllegalStateException("Not a typed field: " + fieldNames[field]);
+            }
+            return true;
+        }
+
+        // reads the value into jsonValue, so nothing of a value that turns out to be malformed is written
+        private boolean parseJson(char[] buffer, int start, int end) {
+            jsonValue = new TokenBuffer(null, false);
+            try (JsonParser json = JSON_FACTORY.createParser(buffer, start, end - start)) {
+                if (json.nextToken() == null) {
+                    return false;
+                }
+                jsonValue.copyCurrentStructure(json);
+                return json.nextToken() == null;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // the values are hashed straight from the parsed fields and the line buffer
+        private String computeKey() {
+            KeyGenerator.Hasher hasher = keyGenerator.hasher();
+            for (int field : keyOrder) {
+                if (!present[field]) {
+                    hasher.append("null");
+                    continue;
+                }
+                switch (written[field]) {
+                    case INT -> hasher.append(intValues[field]);
+                    case FLOAT -> appendKeyFloat(hasher, floatValues[field]);
+                    case BOOLEAN -> hasher.append(booleanValues[field]);
+                    case TEXT, JSON -> hasher.append(tokenizer.buffer(), starts[field], ends[field]);
+                }
+            }
+            return hasher.finish();
+        }
+
+        // the key used to be computed from the row after a JSON round trip, which turned floats into doubles
+        private void appendKeyFloat(KeyGenerator.Hasher hasher, float value) {
+            if (Math.abs(value) < EXACT_KEY_FLOAT_LIMIT) {
+                hasher.append(Float.toString(value));
+            } else {
+                hasher.append(Double.toString(Double.parseDouble(Float.toString(value))));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.demo.Csv;
+
+import java.util.Arrays;
+
+// splits CSV lines on the resource's delimiter without regexes or per-field substrings. the line is copied into a
+// reusable char buffer and each field is kept as a [start, end) range of that buffer, so an instance is meant to be
+// reused for many lines by one thread. fields may be quoted with '"', a doubled quote inside a quoted field stands
+// for a single quote. quoted fields can contain the delimiter but not a line break, because lines are read one by one.
+public class CsvTokenizer {
+    private static final char QUOTE = '"';
+
+    private final char[] delimiter;
+    private final String endLine;
+    private char[] buffer = new char[256];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+
+    public CsvTokenizer(String delimiter, String endLine) {
+        this.delimiter = (delimiter == null || delimiter.isEmpty() ? "," : delimiter).toCharArray();
+        this.endLine = endLine == null ? "" : endLine;
+    }
+
+    // tokenizes the line and returns the number of fields found. the fields stay valid until the next call.
+    public int tokenize(String line) {
+        int length = line.length();
+        if (!endLine.isEmpty() && line.endsWith(endLine)) {
+            length -= endLine.length();
+        }
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        line.getChars(0, length, buffer, 0);
+
+        fieldCount = 0;
+        int read = 0;
+        while (true) {
+            int start = read;
+            int write = read;
+            if (read < length && buffer[read] == QUOTE) {
+                // quoted field, unescaped in place: the write position never overtakes the read position
+                read++;
+                while (read < length) {
+                    char c = buffer[read++];
+                    if (c == QUOTE) {
+                        if (read < length && buffer[read] == QUOTE) {
+                            read++;
+                        } else {
+                            break;
+                        }
+                    }
+                    buffer[write++] = c;
+                }
+                // anything between the closing quote and the next delimiter is kept as is
+                while (read < length && !isDelimiterAt(read, length)) {
+                    buffer[write++] = buffer[read++];
+                }
+            } else {
+                while (read < length && !isDelimiterAt(read, length)) {
+                    read++;
+                }
+                write = read;
+            }
+            addField(start, write);
+            if (read >= length) {
+                return fieldCount;
+            }
+            read += delimiter.length;
+        }
+    }
+
+    // takes the fields of a row that was split already, like a record of an Avro file, and returns their
+    // number. a null field is kept as one, isNull tells it apart from an empty field.
+    public int load(CharSequence[] fields) {
+        int length = 0;
+        for (CharSequence field : fields) {
+            length += field == null ? 0 : field.length();
+        }
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        fieldCount = 0;
+        int write = 0;
+        for (CharSequence field : fields) {
+            if (field == null) {
+                addField(-1, -1);
+                continue;
+            }
+            int start = write;
+            for (int i = 0; i < field.length(); i++) {
+                buffer[write++] = field.charAt(i);
+            }
+            addField(start, write);
+        }
+        return fieldCount;
+    }
+
+    public boolean isNull(int field) {
+        return starts[field] < 0;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public char[] buffer() {
+        return buffer;
+    }
+
+    public int start(int field) {
+        return starts[field];
+    }
+
+    public int end(int field) {
+        return ends[field];
+    }
+
+    // materializes a field as a String, only needed for values that end up as text.
+    public String fieldString(int field) {
+        return new String(buffer, starts[field], ends[field] - starts[field]);
+    }
+
+    private boolean isDelimiterAt(int position, int length) {
+        if (buffer[position] != delimiter[0] || position + delimiter.length > length) {
+            return false;
+        }
+        for (int i = 1; i < delimiter.length; i++) {
+            if (buffer[position + i] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+}
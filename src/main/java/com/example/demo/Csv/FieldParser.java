@@ -0,0 +1,175 @@
+package com.example.demo.Csv;
+
+// parses typed values straight out of a tokenizer buffer. a malformed value is reported through the return value
+// instead of an exception, the parsed value is read back with intValue(), floatValue() or booleanValue(). keeps
+// the results in fields, so like CsvTokenizer an instance belongs to one thread.
+public class FieldParser {
+    // the largest mantissa and power of ten that are exact in a float, below both a single
+    // multiplication or division is correctly rounded and gives the same result as Float.parseFloat
+    private static final int MAX_EXACT_MANTISSA = 1 << 24;
+    private static final float[] EXACT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private int intValue;
+    private float floatValue;
+    private boolean booleanValue;
+
+    // same grammar as Integer.parseInt: an optional sign followed by decimal digits, no whitespace.
+    public boolean parseInt(char[] buffer, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        boolean negative = buffer[start] == '-';
+        int position = buffer[start] == '-' || buffer[start] == '+' ? start + 1 : start;
+        if (position == end) {
+            return false;
+        }
+        long value = 0;
+        while (position < end) {
+            int digit = buffer[position++] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return false;
+            }
+        }
+        if (negative) {
+            value = -value;
+        } else if (value > Integer.MAX_VALUE) {
+            return false;
+        }
+        intValue = (int) value;
+        return true;
+    }
+
+    // plain decimals like -12.5 or 3e4 are parsed here, other spellings Float.parseFloat accepts
+    // (NaN, Infinity, hex, f/d suffixes) take the slow path, which is the only one that can throw.
+    public boolean parseFloat(char[] buffer, int start, int end) {
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        int position = start;
+        boolean negative = false;
+        if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+            negative = buffer[position++] == '-';
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+        boolean seenDot = false;
+        for (; position < end; position++) {
+            char c = buffer[position];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (seenDot) {
+                        scale--;
+                    }
+                } else {
+                    exact = false;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return parseFloatSlow(buffer, start, end);
+        }
+        if (position < end && (buffer[position] == 'e' || buffer[position] == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+                negativeExponent = buffer[position++] == '-';
+            }
+            int exponentStart = position;
+            int exponent = 0;
+            while (position < end && buffer[position] >= '0' && buffer[position] <= '9') {
+                exponent = Math.min(exponent * 10 + (buffer[position++] - '0'), 1000);
+            }
+            if (position == exponentStart) {
+                return parseFloatSlow(buffer, start, end);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (position != end) {
+            return parseFloatSlow(buffer, start, end);
+        }
+        if (!exact || mantissa > MAX_EXACT_MANTISSA || Math.abs(scale) >= EXACT_POWERS_OF_TEN.length) {
+            // valid syntax, but out of the exact range, so Float.parseFloat can't throw here
+            floatValue = Float.parseFloat(new String(buffer, start, end - start));
+            return true;
+        }
+        float value = mantissa;
+        value = scale < 0 ? value / EXACT_POWERS_OF_TEN[-scale] : value * EXACT_POWERS_OF_TEN[scale];
+        floatValue = negative ? -value : value;
+        return true;
+    }
+
+    // Boolean.parseBoolean semantics: "true" in any case is true, everything else is false. anything
+    // other than true or false is still reported as malformed so bad data shows up.
+    public boolean parseBoolean(char[] buffer, int start, int end) {
+        booleanValue = regionEqualsIgnoreCase(buffer, start, end, "true");
+        return booleanValue || regionEqualsIgnoreCase(buffer, start, end, "false");
+    }
+
+    public int intValue() {
+        return intValue;
+    }
+
+    public float floatValue() {
+        return floatValue;
+    }
+
+    public boolean booleanValue() {
+        return booleanValue;
+    }
+
+    private boolean parseFloatSlow(char[] buffer, int start, int end) {
+        if (!mayBeJavaFloatLiteral(buffer, start, end)) {
+            return false;
+        }
+        try {
+            floatValue = Float.parseFloat(new String(buffer, start, end - start));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // NaN, Infinity, hex floats and suffixed literals all contain one of these letters, so plain garbage
+    // is rejected without going through the exception.
+    private static boolean mayBeJavaFloatLiteral(char[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            switch (buffer[i]) {
+                case 'N', 'I', 'x', 'X', 'f', 'F', 'd', 'D' -> {
+                    return true;
+                }
+                default -> {
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEqualsIgnoreCase(char[] buffer, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (Character.toLowerCase(buffer[start + i]) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
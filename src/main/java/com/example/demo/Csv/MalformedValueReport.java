@@ -0,0 +1,26 @@
+package com.example.demo.Csv;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// collects the values of one file that didn't match their declared type. those values are still sent as text,
+// this only keeps a count and the first example so a file can be reported once instead of once per value.
+public class MalformedValueReport {
+    private final LongAdder count = new LongAdder();
+    private final AtomicReference<String> firstSample = new AtomicReference<>();
+
+    public void record(String fieldName, String type, String value) {
+        count.increment();
+        if (firstSample.get() == null) {
+            firstSample.compareAndSet(null, fieldName + " (" + type + "): '" + value + "'");
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public String firstSample() {
+        return firstSample.get();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.Formats;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+// reads the data entries of one file format. the reader of a zip is picked by the FILE_TYPE of its resource, see
+// FormatReaders, so a new format is a new component implementing this interface. the entries themselves are
+// scheduled by the ZipProcessor.
+public interface FormatReader {
+    // the FILE_TYPE values of RESOURCE_DESCRIPTION this reader is used for
+    Set<String> fileTypes();
+
+    // the entries of the zip that hold rows, metadata.json is never one of them
+    List<ZipArchiveEntry> dataEntries(ZipArchive archive) throws IOException;
+
+    // streams the rows of one data entry to the sink chunk by chunk, each as valuePrefix followed by the row JSON.
+    // the first skipRows rows were sent before the zip was interrupted, they are read past without being
+    // converted. the data entries of a zip are read in parallel, so this is called from several threads at once.
+    // returns the number of rows sent.
+    long read(ZipArchive archive, ZipArchiveEntry entry, ResourceDescriptionService.ResourceSchema schema,
+              byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, long skipRows, ZipProcessor.ChunkSink sink)
+            throws IOException;
+
+    // whether the chunks of an entry reach the sink in file order, so the rows sent so far are always its first
+    // rows. otherwise only whole entries are checkpointed.
+    default boolean rowsInFileOrder() {
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.Formats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// every FormatReader of the context by the FILE_TYPE values it reads. two readers claiming the same FILE_TYPE fail
+// the startup, the pipeline would otherwise pick one of them depending on the bean order.
+@Component
+public class FormatReaders {
+    private static final Logger logger = LoggerFactory.getLogger(FormatReaders.class);
+
+    private final Map<String, FormatReader> readers = new TreeMap<>();
+
+    @Autowired
+    public FormatReaders(List<FormatReader> formatReaders) {
+        for (FormatReader reader : formatReaders) {
+            for (String fileType : reader.fileTypes()) {
+                FormatReader previous = readers.putIfAbsent(fileType, reader);
+                if (previous != null) {
+                    throw new IllegalStateException("FILE_TYPE " + fileType + " is read by both "
+                            + previous.getClass().getSimpleName() + " and " + reader.getClass().getSimpleName());
+                }
+            }
+        }
+        logger.info("Supported file types: {}", readers.keySet());
+    }
+
+    // the reader of the FILE_TYPE, null if there is none
+    public FormatReader forFileType(String fileType) {
+        return fileType == null ? null : readers.get(fileType);
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.demo.Json;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ZipProcessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// streams the elements of a JSON entry to the sink without building the tree of the whole entry. the entry is
+// read token by token and every top-level element of the array is copied straight into its message bytes, so
+// memory stays flat however many elements there are. only values nested inside an element are materialized, one
+// at a time, because the key hashes them the way String.valueOf formats a parsed Map or List.
+public class JsonEntryReader {
+    private final ObjectMapper objectMapper;
+    private final KeyGenerator keyGenerator;
+    private final PipelineMetrics.ResourceMeters meters;
+    private final byte[] valuePrefix;
+    private final int chunkSize;
+    private final ByteArrayBuilder out = new ByteArrayBuilder();
+    private final JsonGenerator generator;
+    // the top-level fields of the current element, to hash them in field name order
+    private final List<String> fieldNames = new ArrayList<>();
+    private final List<String> keyValues = new ArrayList<>();
+    private final List<Integer> keyOrder = new ArrayList<>();
+    private long elements;
+
+    // reads on the calling thread, the keys are computed with its hasher
+    public JsonEntryReader(ObjectMapper objectMapper, KeyGenerator keyGenerator, PipelineMetrics.ResourceMeters meters,
+                           byte[] valuePrefix, int chunkSize) throws IOException {
+        this.objectMapper = objectMapper;
+        this.keyGenerator = keyGenerator;
+        this.meters = meters;
+        this.valuePrefix = valuePrefix;
+        this.chunkSize = chunkSize;
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+    }
+
+    // reads an entry holding an array of elements or a single object, returns the number of rows sent. the first
+    // skipRows elements are skipped over token by token, without being copied.
+    public long read(InputStream is, long skipRows, ZipProcessor.ChunkSink sink) throws IOException {
+        long rows = 0;
+        List<ZipProcessor.OutputRecord> chunk = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(is)) {
+            JsonToken root = parser.nextToken();
+            if (root == JsonToken.START_ARRAY) {
+                long skipped = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (skipped < skipRows) {
+                        skipped++;
+                        parser.skipChildren();
+                        continue;
+                    }
+                    chunk.add(readElement(parser));
+                    if (chunk.size() == chunkSize) {
+                        sink.accept(chunk);
+                        rows += chunk.size();
+                        chunk = new ArrayList<>();
+                    }
+                }
+            } else if (root == JsonToken.START_OBJECT && skipRows == 0) {
+                chunk.add(readElement(parser));
+            }
+        }
+        if (!chunk.isEmpty()) {
+            sink.accept(chunk);
+            rows += chunk.size();
+        }
+        return rows;
+    }
+
+    // the parser is on the first token of the element and is left on its last token. one element in
+    // rowSampleInterval is timed: reading and copying it counts as serialization, the rest as hashing.
+    private ZipProcessor.OutputRecord readElement(JsonParser parser) throws IOException {
+        boolean sampled = elements++ % meters.rowSampleInterval() == 0;
+        long started = sampled ? System.nanoTime() : 0;
+        out.write(valuePrefix);
+        boolean object = parser.currentToken() == JsonToken.START_OBJECT;
+        String text = null;
+        if (object) {
+            copyObject(parser);
+        } else {
+            text = copyOther(parser);
+        }
+        generator.flush();
+        // a field that appears twice is rare. the element is then read back as a tree, which keeps the last value
+        // in the place of the first, the way the tree of the whole entry did
+        if (object && sortFields()) {
+            collapseDuplicateFields();
+        }
+        byte[] value = out.toByteArray();
+        out.reset();
+        long copied = sampled ? System.nanoTime() : 0;
+        String key = object ? objectKey() : keyGenerator.key(text);
+        if (sampled) {
+            meters.rowSerialized(copied - started);
+            meters.rowHashed(System.nanoTime() - copied);
+        }
+        return new ZipProcessor.OutputRecord(key, value);
+    }
+
+    // copies the object and collects its top-level fields for objectKey()
+    private void copyObject(JsonParser parser) throws IOException {
+        fieldNames.clear();
+        keyValues.clear();
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            generator.writeFieldName(fieldName);
+            JsonToken token = parser.nextToken();
+            String keyValue = switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    Object nested = objectMapper.readValue(parser, Object.class);
+                    objectMapper.writeValue(generator, nested);
+                    yield String.valueOf(nested);
+                }
+                // the text of a number can be written in several ways, -0 and 0, the key hashes the parsed value
+                case VALUE_NUMBER_INT -> {
+                    Number number = parser.getNumberValue();
+                    generator.copyCurrentEvent(parser);
+                    yield number.toString();
+                }
+                case VALUE_NUMBER_FLOAT -> {
+                    double number = parser.getDoubleValue();
+                    generator.writeNumber(number);
+                    yield Double.toString(number);
+                }
+                default -> {
+                    generator.copyCurrentEvent(parser);
+                    yield token == JsonToken.VALUE_NULL ? "null" : parser.getText();
+                }
+            };
+            fieldNames.add(fieldName);
+            keyValues.add(keyValue);
+        }
+        generator.writeEndObject();
+    }
+
+    // sorts the fields of the object copyObject just copied by name into keyOrder, returns whether a name appears
+    // more than once
+    private boolean sortFields() {
+        keyOrder.clear();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            keyOrder.add(i);
+        }
+        keyOrder.sort(Comparator.comparing(fieldNames::get));
+        for (int i = 1; i < keyOrder.size(); i++) {
+            if (fieldNames.get(keyOrder.get(i)).equals(fieldNames.get(keyOrder.get(i - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // writes the object that was just copied again with every field once, and collects its fields again
+    private void collapseDuplicateFields() throws IOException {
+        byte[] copied = out.toByteArray();
+        JsonNode element = objectMapper.readTree(copied, valuePrefix.length, copied.length - valuePrefix.length);
+        out.reset();
+        out.write(valuePrefix);
+        objectMapper.writeValue(generator, element);
+        generator.flush();
+        fieldNames.clear();
+        keyValues.clear();
+        for (Map.Entry<String, JsonNode> field : element.properties()) {
+            JsonNode value = field.getValue();
+            fieldNames.add(field.getKey());
+            keyValues.add(value.isContainerNode()
+                    ? String.valueOf(objectMapper.convertValue(value, Object.class))
+                    : value.isTextual() ? value.textValue() : value.asText());
+        }
+        sortFields();
+    }
+
+    // the key of the object copyObject just copied, its values hashed in field name order. sortFields() was
+    // called before.
+    private String objectKey() {
+        KeyGenerator.Hasher hasher = keyGenerator.hasher();
+        for (int field : keyOrder) {
+            hasher.append(keyValues.get(field));
+        }
+        return hasher.finish();
+    }
+
+    // arrays and scalars as elements are rare, they are read as a tree and keyed by their JSON text, which is
+    // returned
+    private String copyOther(JsonParser parser) throws IOException {
+        JsonNode node = objectMapper.readTree(parser);
+        objectMapper.writeValue(generator, node);
+        return node.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.Json;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+
+// every .json entry of the zip except metadata.json. the elements are written as they are, JSON resources
+// don't go through PROPS_DATA.
+@Component
+public class JsonFormatReader implements FormatReader {
+    private final KeyGenerator keyGenerator;
+    private final int chunkSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public JsonFormatReader(KeyGenerator keyGenerator, RowConversionEngine rowConversionEngine) {
+        this.keyGenerator = keyGenerator;
+        this.chunkSize = rowConversionEngine.batchSize();
+    }
+
+    @Override
+    public Set<String> fileTypes() {
+        return Set.of("JSON");
+    }
+
+    @Override
+    public List<ZipArchiveEntry> dataEntries(ZipArchive archive) {
+        return archive.entries(e -> e.getName().endsWith(".json") && !e.getName().equals("metadata.json"));
+    }
+
+    // the entry is streamed token by token, each element is copied into its message as soon as it is read
+    @Override
+    public long read(ZipArchive archive, ZipArchiveEntry entry, ResourceDescriptionService.ResourceSchema schema,
+                     byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, long skipRows,
+                     ZipProcessor.ChunkSink sink) throws IOException {
+        JsonEntryReader reader = new JsonEntryReader(objectMapper, keyGenerator, meters, valuePrefix, chunkSize);
+        try (InputStream is = archive.open(entry)) {
+            return reader.read(is, skipRows, sink);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.demo.Metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+// the meters of the zip pipeline, exposed through /actuator/prometheus next to the Kafka client and Streams
+// metrics Spring Boot binds on its own. everything that is known per resource is tagged with its fileType once the
+// resource is looked up, a handful of values. the resourceId tag has as many values as there are resources and
+// every one of them is a series of every such meter, so it is only added with metrics.resource-id-tag=true. rates are
+// taken from the counters, pipeline_rows_total and pipeline_bytes_total give rows/s and bytes/s.
+// the stages of a single row take nanoseconds, timing every row would cost more than the stages themselves, so
+// only one row in metrics.row-sample-interval is timed.
+// the latencies worth a percentile, pipeline.zip, pipeline.produce and pipeline.forward, publish a histogram. its
+// buckets are a series each, so these timers are not tagged by resource.
+@Component
+public class PipelineMetrics {
+    private final MeterRegistry registry;
+    private final int rowSampleInterval;
+    private final boolean resourceIdTag;
+    private final Timer zipOpen;
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry registry,
+                           @Value("${metrics.row-sample-interval:1024}") int rowSampleInterval,
+                           @Value("${metrics.resource-id-tag:false}") boolean resourceIdTag) {
+        this.registry = registry;
+        this.rowSampleInterval = Math.max(1, rowSampleInterval);
+        this.resourceIdTag = resourceIdTag;
+        this.zipOpen = Timer.builder("pipeline.zip.open")
+                .description("Opening a zip and reading its central directory")
+                .register(registry);
+    }
+
+    public PipelineMetrics(MeterRegistry registry, int rowSampleInterval) {
+        this(registry, rowSampleInterval, false);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void zipOpened(Timer.Sample sample) {
+        sample.stop(zipOpen);
+    }
+
+    public void metadataParsed(Timer.Sample sample, Integer resourceId) {
+        sample.stop(Timer.builder("pipeline.metadata.parse")
+                .description("Reading metadata.json")
+                .tags(resourceTags(resourceId))
+                .register(registry));
+    }
+
+    public void resourceLookedUp(Timer.Sample sample, int resourceId) {
+        sample.stop(Timer.builder("pipeline.resource.lookup")
+                .description("Looking up the description and fields of a resource, cache or database")
+                .tags(resourceTags(resourceId))
+                .register(registry));
+    }
+
+    // a message that was not processed: empty, no zip path, no metadata, unknown resource, unsupported file
+    // type or a failure while processing
+    public void rejected(String reason) {
+        registry.counter("pipeline.messages.rejected", "reason", reason).increment();
+    }
+
+    public void unsupported(int resourceId, String fileType) {
+        registry.counter("pipeline.messages.unsupported",
+                resourceTags(resourceId).and("fileType", String.valueOf(fileType))).increment();
+        rejected("unsupported-file-type");
+    }
+
+    // how long a record waited between the send and its acknowledgement, output.mode=PRODUCER
+    public Timer produceLatency(String topic) {
+        return Timer.builder("pipeline.produce")
+                .description("Time from sending a record to its acknowledgement")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public Counter produceFailures(String topic) {
+        return registry.counter("pipeline.produce.failures", "topic", topic);
+    }
+
+    // how long the stream thread took to forward the records of one drain run to the topology, which serializes
+    // them and hands them to the Streams producer, output.mode=STREAMS. the acknowledgements are not waited for,
+    // their latency is in the producer metrics of Kafka Streams, kafka_producer_request_latency_avg and _max.
+    public Timer forward() {
+        return Timer.builder("pipeline.forward")
+                .description("Forwarding the records of one drain run to the Streams producer")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // how long the workers were held back because the stream thread had not forwarded their records yet,
+    // output.mode=STREAMS
+    public Timer outputWait() {
+        return Timer.builder("pipeline.output.wait")
+                .description("Time a worker waited for room in the output queue of its zip job")
+                .register(registry);
+    }
+
+    // how long zip jobs waited for a worker, by size: small or large
+    public Timer jobWait(String size) {
+        return Timer.builder("pipeline.job.wait")
+                .description("Time a zip job waited for a worker")
+                .tag("size", size)
+                .register(registry);
+    }
+
+    // the zip jobs waiting for a worker and the ones running
+    public <T> void jobs(T scheduler, ToDoubleFunction<T> queued, ToDoubleFunction<T> running) {
+        Gauge.builder("pipeline.jobs", scheduler, queued)
+                .description("Zip jobs by state")
+                .tag("state", "queued")
+                .register(registry);
+        Gauge.builder("pipeline.jobs", scheduler, running)
+                .description("Zip jobs by state")
+                .tag("state", "running")
+                .register(registry);
+    }
+
+    // the meters of one resource, fetched once per zip
+    public ResourceMeters resource(int resourceId, String fileType) {
+        return new ResourceMeters(resourceTags(resourceId).and("fileType", fileType), Tags.of("fileType", fileType));
+    }
+
+    private Tags resourceTags(Integer resourceId) {
+        return resourceIdTag ? Tags.of("resourceId", String.valueOf(resourceId)) : Tags.empty();
+    }
+
+    public final class ResourceMeters {
+        private final Tags tags;
+        private final Tags zipTags;
+        private final Counter rows;
+        private final Counter bytes;
+        private final DistributionSummary zipRows;
+        private final Timer rowParse;
+        private final Timer serialization;
+        private final Timer hashing;
+
+        private ResourceMeters(Tags tags, Tags zipTags) {
+            this.tags = tags;
+            this.zipTags = zipTags;
+            this.rows = Counter.builder("pipeline.rows")
+                    .description("Rows turned into result messages")
+                    .tags(tags).register(registry);
+            this.bytes = Counter.builder("pipeline.bytes")
+                    .description("Bytes of the result messages")
+                    .baseUnit("bytes").tags(tags).register(registry);
+            this.zipRows = DistributionSummary.builder("pipeline.zip.rows")
+                    .description("Rows per zip")
+                    .tags(tags).register(registry);
+            this.rowParse = stageTimer("parse", "Splitting a line into its fields, sampled");
+            this.serialization = stageTimer("serialization", "Typing the values and writing the row JSON, sampled");
+            this.hashing = stageTimer("hashing", "Computing the message key, sampled");
+        }
+
+        private Timer stageTimer(String stage, String description) {
+            return Timer.builder("pipeline.row")
+                    .description(description)
+                    .tags(tags).tag("stage", stage)
+                    .register(registry);
+        }
+
+        public int rowSampleInterval() {
+            return rowSampleInterval;
+        }
+
+        public void rowsSent(int count, long byteCount) {
+            rows.increment(count);
+            bytes.increment(byteCount);
+        }
+
+        // the zips of a resource are counted by pipeline.zip.rows, the timer is only tagged by file type
+        public void zipDone(Timer.Sample sample, long rowCount, boolean succeeded) {
+            zipRows.record(rowCount);
+            sample.stop(Timer.builder("pipeline.zip")
+                    .description("Processing a zip, from opening it to its last record written")
+                    .tags(zipTags).tag("outcome", succeeded ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+
+        public void rowParsed(long nanos) {
+            rowParse.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void rowSerialized(long nanos) {
+            serialization.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void rowHashed(long nanos) {
+            hashing.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.demo.Output;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// computes the message keys: the hash of the row values in field name order. every thread gets its own Hasher,
+// with its own digest and buffers, and the values are appended to it as UTF-8 bytes as they are read, so a key
+// costs no MessageDigest lookup and no concatenated String, only the key String itself.
+// SHA_256 with HEX gives the keys the topics always had. MURMUR3_128 is a lot cheaper and enough where the key is
+// only used for partitioning and de-duplication, BASE64 makes the keys shorter.
+@Component
+public class KeyGenerator {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    public enum Algorithm { SHA_256, MURMUR3_128 }
+
+    // BASE64 is the URL-safe alphabet without padding
+    public enum Encoding { HEX, BASE64 }
+
+    private final Algorithm algorithm;
+    private final Encoding encoding;
+    private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(Hasher::new);
+
+    @Autowired
+    public KeyGenerator(@Value("${output.key.algorithm:SHA_256}") Algorithm algorithm,
+                        @Value("${output.key.encoding:HEX}") Encoding encoding) {
+        this.algorithm = algorithm;
+        this.encoding = encoding;
+    }
+
+    // the hasher of the calling thread, empty. it must not be handed to another thread.
+    public Hasher hasher() {
+        Hasher hasher = hashers.get();
+        hasher.reset();
+        return hasher;
+    }
+
+    public String key(String input) {
+        return hasher().append(input).finish();
+    }
+
+    public final class Hasher {
+        private final MessageDigest digest;
+        private byte[] input = new byte[256];
+        private int length;
+        private final byte[] hash = new byte[32];
+        private final char[] encoded = new char[64];
+
+        private Hasher() {
+            try {
+                this.digest = algorithm == Algorithm.SHA_256 ? MessageDigest.getInstance("SHA-256") : null;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        public void reset() {
+            length = 0;
+        }
+
+        public Hasher append(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    appendCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+                } else {
+                    appendCodePoint(c);
+                }
+            }
+            return this;
+        }
+
+        public Hasher append(char[] buffer, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = buffer[i];
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(buffer[i + 1])) {
+                    appendCodePoint(Character.toCodePoint(c, buffer[++i]));
+                } else {
+                    appendCodePoint(c);
+                }
+            }
+            return this;
+        }
+
+        public Hasher append(int value) {
+            if (value == Integer.MIN_VALUE) {
+                return append(Integer.toString(value));
+            }
+            ensureCapacity(11);
+            if (value < 0) {
+                input[length++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (int rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int i = length + digits - 1; i >= length; i--) {
+                input[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+            return this;
+        }
+
+        public Hasher append(boolean value) {
+            return append(value ? "true" : "false");
+        }
+
+        // the key of everything appended since the last reset
+        public String finish() {
+            int hashLength;
+            if (algorithm == Algorithm.SHA_256) {
+                digest.update(input, 0, length);
+                try {
+                    hashLength = digest.digest(hash, 0, hash.length);
+                } catch (DigestException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                long[] murmur = MurmurHash3.hash128x64(input, 0, length, 0);
+                writeLong(murmur[0], 0);
+                writeLong(murmur[1], 8);
+                hashLength = 16;
+            }
+            length = 0;
+            return encoding == Encoding.HEX ? hex(hashLength) : base64(hashLength);
+        }
+
+        // the same bytes String.getBytes(UTF_8) gives, an unpaired surrogate becomes '?'
+        private void appendCodePoint(int codePoint) {
+            ensureCapacity(4);
+            if (codePoint < 0x80) {
+                input[length++] = (byte) codePoint;
+            } else if (codePoint < 0x800) {
+                input[length++] = (byte) (0xC0 | codePoint >> 6);
+                input[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                input[length++] = '?';
+            } else if (codePoint < 0x10000) {
+                input[length++] = (byte) (0xE0 | codePoint >> 12);
+                input[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                input[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                input[length++] = (byte) (0xF0 | codePoint >> 18);
+                input[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                input[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                input[length++] = (byte) (0x80 | codePoint & 0x3F);
+            }
+        }
+
+        private void ensureCapacity(int more) {
+            if (length + more > input.length) {
+                byte[] grown = new byte[Math.max(input.length * 2, length + more)];
+                System.arraycopy(input, 0, grown, 0, length);
+                input = grown;
+            }
+        }
+
+        private void writeLong(long value, int offset) {
+            for (int i = 7; i >= 0; i--) {
+                hash[offset + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+
+        private String hex(int hashLength) {
+            for (int i = 0; i < hashLength; i++) {
+                encoded[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                encoded[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(encoded, 0, 2 * hashLength);
+        }
+
+        private String base64(int hashLength) {
+            int chars = 0;
+            int i = 0;
+            for (; i + 2 < hashLength; i += 3) {
+                int bits = (hash[i] & 0xFF) << 16 | (hash[i + 1] & 0xFF) << 8 | (hash[i + 2] & 0xFF);
+                encoded[chars++] = BASE64_DIGITS[bits >>> 18];
+                encoded[chars++] = BASE64_DIGITS[bits >>> 12 & 0x3F];
+                encoded[chars++] = BASE64_DIGITS[bits >>> 6 & 0x3F];
+                encoded[chars++] = BASE64_DIGITS[bits & 0x3F];
+            }
+            if (i < hashLength) {
+                int bits = (hash[i] & 0xFF) << 16 | (i + 1 < hashLength ? (hash[i + 1] & 0xFF) << 8 : 0);
+                encoded[chars++] = BASE64_DIGITS[bits >>> 18];
+                encoded[chars++] = BASE64_DIGITS[bits >>> 12 & 0x3F];
+                if (i + 1 < hashLength) {
+                    encoded[chars++] = BASE64_DIGITS[bits >>> 6 & 0x3F];
+                }
+            }
+            return new String(encoded, 0, chars);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo.Output;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// produces the result messages asynchronously and keeps track of them, for output.mode=PRODUCER. at most
+// output.max-in-flight records are unacknowledged at a time, a sender waits for a free slot instead of filling the
+// heap, which slows the readers down to what the brokers take. every zip gets a Delivery that completes once all of
+// its records are acknowledged, so a zip is only reported as done when its output is safely written. batching,
+// linger and compression are set on the producer through spring.kafka.producer.* in application.properties.
+@Service
+public class OutputStage {
+    private static final Logger logger = LoggerFactory.getLogger(OutputStage.class);
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final String topic;
+    private final Semaphore inFlight;
+    private final Duration deliveryTimeout;
+    private final Timer produceLatency;
+    private final Counter produceFailures;
+    private final LongAdder sentRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+
+    // what happened to the records of one zip
+    public record DeliveryResult(long records, long failed, long bytes, Duration maxLatency, Duration elapsed,
+                                 Throwable firstError) {
+        public boolean succeeded() {
+            return failed == 0 && firstError == null;
+        }
+    }
+
+    @Autowired
+    public OutputStage(KafkaTemplate<String, byte[]> kafkaTemplate,
+                       @Value("${output.topic:output_results}") String topic,
+                       @Value("${output.max-in-flight:10000}") int maxInFlight,
+                       @Value("${output.delivery-timeout:5m}") Duration deliveryTimeout,
+                       PipelineMetrics metrics) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.topic = topic;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.deliveryTimeout = deliveryTimeout;
+        this.produceLatency = metrics.produceLatency(topic);
+        this.produceFailures = metrics.produceFailures(topic);
+    }
+
+    public Delivery newDelivery(String source) {
+        return new Delivery(source);
+    }
+
+    public long sentRecords() {
+        return sentRecords.sum();
+    }
+
+    public long failedRecords() {
+        return failedRecords.sum();
+    }
+
+    // the average size of the batches the producer sent, in bytes, or NaN before the first batch
+    public double averageBatchSize() {
+        for (Map.Entry<MetricName, ? extends Metric> metric : kafkaTemplate.metrics().entrySet()) {
+            if ("batch-size-avg".equals(metric.getKey().name())
+                    && "producer-metrics".equals(metric.getKey().group())) {
+                return ((Number) metric.getValue().metricValue()).doubleValue();
+            }
+        }
+        return Double.NaN;
+    }
+
+    // the records of one zip. send() may be called from several threads, close() once all of them were sent.
+    public class Delivery implements ResultSink {
+        private final String source;
+        private final long startNanos = System.nanoTime();
+        // one for every unacknowledged record, plus one until close() is called
+        private final AtomicLong pending = new AtomicLong(1);
+        private final LongAdder records = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        private final CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+
+        private Delivery(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public void send(String key, byte[] value) throws InterruptedIOException {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send to " + topic);
+            }
+            long sendNanos = System.nanoTime();
+            pending.incrementAndGet();
+            records.increment();
+            bytes.add(value.length);
+            try {
+                kafkaTemplate.send(topic, key, value)
+                        .whenComplete((result, error) -> acknowledge(sendNanos, error));
+            } catch (RuntimeException e) {
+                acknowledge(sendNanos, e);
+            }
+        }
+
+        private void acknowledge(long sendNanos, Throwable error) {
+            inFlight.release();
+            long latencyNanos = System.nanoTime() - sendNanos;
+            maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+            produceLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+            if (error != null) {
+                failed.increment();
+                failedRecords.increment();
+                produceFailures.increment();
+                firstError.compareAndSet(null, error);
+            } else {
+                sentRecords.increment();
+            }
+            if (pending.decrementAndGet() == 0) {
+                acknowledged.complete(null);
+            }
+        }
+
+        @Override
+        public boolean finish() throws InterruptedIOException {
+            return close(deliveryTimeout).succeeded();
+        }
+
+        // no more records will be sent, waits until the ones that were are acknowledged or failed
+        public DeliveryResult close(Duration timeout) throws InterruptedIOException {
+            if (pending.decrementAndGet() == 0) {
+                acknowledged.complete(null);
+            }
+            try {
+                acknowledged.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for acknowledgements of " + source);
+            } catch (TimeoutException e) {
+                firstError.compareAndSet(null, new TimeoutException(
+                        pending.get() + " records of " + source + " not acknowledged after " + timeout));
+            } catch (Exception e) {
+                firstError.compareAndSet(null, e);
+            }
+            DeliveryResult result = new DeliveryResult(records.sum(), failed.sum(), bytes.sum(),
+                    Duration.ofNanos(maxLatencyNanos.get()), Duration.ofNanos(System.nanoTime() - startNanos),
+                    firstError.get());
+            if (result.succeeded()) {
+                logger.info("Delivered {} records ({} bytes) of {} in {} ms, max send latency {} ms, avg batch {} bytes",
+                        result.records(), result.bytes(), source, result.elapsed().toMillis(),
+                        result.maxLatency().toMillis(), Math.round(averageBatchSize()));
+            } else {
+                logger.error("Failed to deliver {} of {} records of {}", result.failed(), result.records(), source,
+                        result.firstError());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.Output;
+
+import java.io.IOException;
+
+// where the result messages of one zip go. send() may be called from several threads at once, finish() is called
+// once after the last send.
+public interface ResultSink {
+
+    void send(String key, byte[] value) throws IOException;
+
+    // the records sent so far include the first rows of the entry, all of its rows once it is complete. called
+    // after those records were sent, from the thread that sent them. a sink that can tell when the records before
+    // it are written keeps it, so an interrupted zip can be resumed from there.
+    default void checkpoint(String entry, long rows, boolean complete) throws IOException {
+    }
+
+    // no more records will be sent. returns whether every record that was sent is written
+    boolean finish() throws IOException;
+}
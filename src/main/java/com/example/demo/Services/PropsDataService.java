@@ -1,30 +1,46 @@
 package com.example.demo.Services;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Service
 public class PropsDataService {
+    // Oracle takes at most 1000 expressions in an IN list
+    static final int IN_LIST_LIMIT = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    // the column the fields of a resource are sorted by, the order of the columns of its files. every query that
+    // returns fields sorts by it, so a resource gets the same field order however it was loaded.
+    private final String orderColumn;
 
     @Autowired
-    public PropsDataService(JdbcTemplate jdbcTemplate) {
+    public PropsDataService(JdbcTemplate jdbcTemplate,
+                            @Value("${resources.props.order-column:ROWID}") String orderColumn) {
+        if (!orderColumn.matches("[A-Za-z][A-Za-z0-9_$#]*")) {
+            throw new IllegalArgumentException("resources.props.order-column is not a column: " + orderColumn);
+        }
         this.jdbcTemplate = jdbcTemplate;
+        this.orderColumn = orderColumn;
     }
 
     public record PropsData(String type, String specialType) {
     }
 
-    // #9: retrieves field metadata for a given resource ID from the database.
+    // #9: retrieves field metadata for a given resource ID from the database, in the column order of its files.
     public Map<String, PropsData> getPropsData(int resourceId) {
-        String sql = "SELECT FIELD_NAME, FIELD_TYPE, FIELD_SPECIAL_TYPE FROM PROPS_DATA WHERE RESOURCE_ID = ?";
-        Map<String, PropsData> map = new HashMap<>();
+        String sql = "SELECT FIELD_NAME, FIELD_TYPE, FIELD_SPECIAL_TYPE FROM PROPS_DATA WHERE RESOURCE_ID = ? "
+                + "ORDER BY " + orderColumn;
+        Map<String, PropsData> map = new LinkedHashMap<>();
         jdbcTemplate.query(sql, new Object[]{resourceId}, rs -> {
             map.put(rs.getString("FIELD_NAME"),
                     new PropsData(rs.getString("FIELD_TYPE"), rs.getString("FIELD_SPECIAL_TYPE")));
@@ -32,16 +48,67 @@ public class PropsDataService {
         return map;
     }
 
+    // retrieves the field metadata of all resources in one query, grouped by resource ID.
+    public Map<Integer, Map<String, PropsData>> getAllPropsData() {
+        String sql = "SELECT RESOURCE_ID, FIELD_NAME, FIELD_TYPE, FIELD_SPECIAL_TYPE FROM PROPS_DATA "
+                + "ORDER BY RESOURCE_ID, " + orderColumn;
+        Map<Integer, Map<String, PropsData>> map = new HashMap<>();
+        jdbcTemplate.query(sql, groupByResource(map));
+        return map;
+    }
+
+    // retrieves the field metadata of the given resources, a query per IN_LIST_LIMIT resources, grouped by
+    // resource ID. resources without fields are left out.
+    public Map<Integer, Map<String, PropsData>> getPropsData(List<Integer> resourceIds) {
+        String sql = "SELECT RESOURCE_ID, FIELD_NAME, FIELD_TYPE, FIELD_SPECIAL_TYPE FROM PROPS_DATA "
+                + "WHERE RESOURCE_ID IN (%s) ORDER BY RESOURCE_ID, " + orderColumn;
+        Map<Integer, Map<String, PropsData>> map = new HashMap<>();
+        queryByIds(jdbcTemplate, sql, resourceIds, groupByResource(map));
+        return map;
+    }
+
+    // the version of the fields of every resource: the highest versionColumn of its rows and their count, so
+    // added, changed and removed fields all change it. returns one short row per resource, no field metadata.
+    public Map<Integer, String> getPropsVersions(String versionColumn) {
+        String sql = "SELECT RESOURCE_ID, MAX(" + versionColumn + ") AS VERSION, COUNT(*) AS FIELD_COUNT "
+                + "FROM PROPS_DATA GROUP BY RESOURCE_ID";
+        Map<Integer, String> versions = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            versions.put(rs.getInt("RESOURCE_ID"), rs.getString("VERSION") + "/" + rs.getInt("FIELD_COUNT"));
+        });
+        return versions;
+    }
+
+    private static RowCallbackHandler groupByResource(Map<Integer, Map<String, PropsData>> map) {
+        return rs -> {
+            map.computeIfAbsent(rs.getInt("RESOURCE_ID"), id -> new LinkedHashMap<>())
+                    .put(rs.getString("FIELD_NAME"),
+                            new PropsData(rs.getString("FIELD_TYPE"), rs.getString("FIELD_SPECIAL_TYPE")));
+        };
+    }
+
+    // runs the query, whose %s is the IN list of the ids, once per IN_LIST_LIMIT ids
+    static void queryByIds(JdbcTemplate jdbcTemplate, String sql, List<Integer> ids, RowCallbackHandler handler) {
+        for (int from = 0; from < ids.size(); from += IN_LIST_LIMIT) {
+            List<Integer> batch = ids.subList(from, Math.min(from + IN_LIST_LIMIT, ids.size()));
+            jdbcTemplate.query(String.format(sql, String.join(",", Collections.nCopies(batch.size(), "?"))),
+                    handler, batch.toArray());
+        }
+    }
+
     // Returns the ordered list of field names for a given resourceId, excluding resourceId and resourceName
     public List<String> getPropsFieldNames(int resourceId) {
-        String sql = "SELECT FIELD_NAME FROM PROPS_DATA WHERE RESOURCE_ID = ?";
+        return fieldNames(getPropsData(resourceId));
+    }
+
+    // the ordered field names of already loaded field metadata, excluding resourceId and resourceName
+    public static List<String> fieldNames(Map<String, PropsData> propsData) {
         List<String> fieldNames = new ArrayList<>();
-        jdbcTemplate.query(sql, new Object[]{resourceId}, rs -> {
-            String fieldName = rs.getString("FIELD_NAME");
+        for (String fieldName : propsData.keySet()) {
             if (!"resourceId".equals(fieldName) && !"resourceName".equals(fieldName)) {
                 fieldNames.add(fieldName);
             }
-        });
-        return fieldNames;
+        }
+        return List.copyOf(fieldNames);
     }
 }
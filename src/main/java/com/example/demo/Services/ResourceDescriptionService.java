@@ -1,26 +1,126 @@
 package com.example.demo.Services;
 
+import com.example.demo.Csv.CsvRowWriter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 @Service
-public class ResourceDescriptionService {
+public class ResourceDescriptionService implements MeterBinder {
+    private static final String DESCRIPTION_COLUMNS =
+            "RESOURCE_ID, RESOURCE_VERSION, RESOURCE_NAME, FILE_TYPE, DELIMITER, END_LINE";
+
     private final JdbcTemplate jdbcTemplate;
-    // it allows both high scalability and safe concurrent access(multiple threads can read from the map simultaneously, good in our case because it prevents refreshing
-    // the cache and getting value from the data at the same time).
-    private final Map<Integer, Map<String, Object>> cache = new ConcurrentHashMap<>();
+    private final PropsDataService propsDataService;
+    private final long maxSize;
+    private final Duration ttl;
+    // the expression whose value changes with every change of a row of RESOURCE_DESCRIPTION or PROPS_DATA
+    private final String versionColumn;
+    // where the snapshot is kept between runs, null if it isn't
+    private final Path snapshotPath;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // the resources of the last refresh and the version they were loaded at, the next refresh only loads the
+    // resources whose version is different by then
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of());
+    // one schema per resource, everything the pipeline looks up for a zip. the whole cache is replaced in one
+    // volatile write when it is refreshed, so lookups either see the old or the new snapshot but never an empty
+    // one. unknown resources are cached as empty too, so they don't hit the database for every message.
+    private volatile Cache<Integer, Optional<ResourceSchema>> cache;
+    // hits and misses of the caches that were already replaced, so the stats survive a refresh
+    private volatile CacheStats retiredStats = CacheStats.empty();
     private static final Logger logger = LoggerFactory.getLogger(ResourceDescriptionService.class);
 
+    public record CsvFormat(String delimiter, String endLine) {}
+
+    // immutable snapshot of a resource: its RESOURCE_DESCRIPTION row, its PROPS_DATA fields and the row writer
+    // compiled from them. the row writer is not part of the snapshot file, it is compiled again when it is read.
+    public record ResourceSchema(int resourceId, String version, String name, String fileType, CsvFormat csvFormat,
+                                 Map<String, PropsDataService.PropsData> propsData, List<String> fieldNames,
+                                 @JsonIgnore CsvRowWriter rowWriter) {
+
+        public ResourceSchema(int resourceId, String version, String name, String fileType, CsvFormat csvFormat,
+                              Map<String, PropsDataService.PropsData> propsData) {
+            this(resourceId, version, name, fileType, csvFormat,
+                    Collections.unmodifiableMap(new LinkedHashMap<>(propsData)), PropsDataService.fieldNames(propsData),
+                    new CsvRowWriter(PropsDataService.fieldNames(propsData), propsData));
+        }
+
+        // this schema with the fields and row writer of the previous version of the resource, if its PROPS_DATA
+        // didn't change, so a change of the description alone doesn't compile the row writer again. the fields
+        // have to be in the same order too, the row writer maps the columns by position.
+        ResourceSchema reusingFieldsOf(ResourceSchema previous) {
+            if (previous == null || !previous.fieldNames().equals(fieldNames)
+                    || !previous.propsData().equals(propsData)) {
+                return this;
+            }
+            return new ResourceSchema(resourceId, version, name, fileType, csvFormat, previous.propsData(),
+                    previous.fieldNames(), previous.rowWriter());
+        }
+
+        // the columns the metadata of every message is enriched with
+        public Map<String, Object> description() {
+            Map<String, Object> description = new HashMap<>();
+            description.put("RESOURCE_VERSION", version);
+            description.put("RESOURCE_NAME", name);
+            description.put("FILE_TYPE", fileType);
+            return description;
+        }
+    }
+
+    // what the snapshot file holds. the version of a resource is the version of its RESOURCE_DESCRIPTION row and
+    // the version of its PROPS_DATA rows.
+    record Snapshot(Map<Integer, ResourceSchema> schemas, Map<Integer, String> versions) {
+    }
+
     @Autowired
-    public ResourceDescriptionService(JdbcTemplate jdbcTemplate) {
+    public ResourceDescriptionService(JdbcTemplate jdbcTemplate, PropsDataService propsDataService,
+                                      @Value("${resources.cache.max-size:10000}") long maxSize,
+                                      @Value("${resources.cache.ttl:15m}") Duration ttl,
+                                      @Value("${resources.refresh.version-column:ORA_ROWSCN}") String versionColumn,
+                                      @Value("${resources.snapshot.path:}") String snapshotPath) {
+        if (!versionColumn.matches("[A-Za-z][A-Za-z0-9_$#]*")) {
+            throw new IllegalArgumentException("resources.refresh.version-column is not a column: " + versionColumn);
+        }
         this.jdbcTemplate = jdbcTemplate;
+        this.propsDataService = propsDataService;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.versionColumn = versionColumn;
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.cache = newCache();
+        // with a snapshot the app starts right away, the first scheduled refresh runs as soon as it is up and only
+        // loads what changed since the snapshot was written
+        if (readSnapshot()) {
+            return;
+        }
         try {
             refreshCache();
         } catch (Exception e) {
@@ -30,43 +130,203 @@ public class ResourceDescriptionService {
 
     // refreshing the cache keeps your data up-to-date, reduces database calls
     // , reduce load on the database, speeds up access to resource descriptions.
+    // two narrow queries read the version of every resource, only the resources that are new or have another
+    // version than in the snapshot are loaded, in bulk. the cache is rebuilt from the snapshot and swapped in at
+    // once.
     @Scheduled(fixedRate = 5 * 60 * 1000)
-    public void refreshCache() {
-        Map<Integer, Map<String, Object>> newCache = new ConcurrentHashMap<>();
-        jdbcTemplate.query("SELECT RESOURCE_ID, RESOURCE_VERSION, RESOURCE_NAME, FILE_TYPE FROM RESOURCE_DESCRIPTION",
-                rs -> {
-                    int id = rs.getInt("RESOURCE_ID");
-                    Map<String, Object> desc = Map.of(
-                            "RESOURCE_VERSION", rs.getString("RESOURCE_VERSION"),
-                            "RESOURCE_NAME", rs.getString("RESOURCE_NAME"),
-                            "FILE_TYPE", rs.getString("FILE_TYPE")
-                    );
-                    newCache.put(id, desc);
-                });
-        cache.clear();
-        cache.putAll(newCache);
+    public synchronized void refreshCache() {
+        // read before the rows, a change in between is loaded now and loaded again next time, never missed
+        Map<Integer, String> versions = loadVersions();
+        Snapshot current = snapshot;
+        List<Integer> changed = new ArrayList<>();
+        versions.forEach((resourceId, version) -> {
+            if (!version.equals(current.versions().get(resourceId))) {
+                changed.add(resourceId);
+            }
+        });
+        long removed = current.versions().keySet().stream().filter(id -> !versions.containsKey(id)).count();
+
+        Map<Integer, ResourceSchema> schemas = new HashMap<>(current.schemas());
+        schemas.keySet().retainAll(versions.keySet());
+        // past half of the resources, two full scans are cheaper than the IN lists
+        Map<Integer, ResourceSchema> loaded = changed.size() > versions.size() / 2
+                ? loadAllSchemas()
+                : loadSchemas(changed);
+        changed.forEach(schemas::remove);
+        loaded.forEach((resourceId, schema) ->
+                schemas.put(resourceId, schema.reusingFieldsOf(current.schemas().get(resourceId))));
+        Map<Integer, String> loadedVersions = new HashMap<>(versions);
+        loadedVersions.keySet().retainAll(schemas.keySet());
+
+        install(new Snapshot(Map.copyOf(schemas), Map.copyOf(loadedVersions)));
+        if (!changed.isEmpty() || removed > 0) {
+            writeSnapshot();
+        }
+        CacheStats stats = getCacheStats();
+        logger.info("Resource cache refreshed with {} resources, {} changed, {} removed, {} hits, {} misses so far",
+                schemas.size(), changed.size(), removed, stats.hitCount(), stats.missCount());
     }
 
-    // #6: retrieves the description for a given resource ID from the cache.
-    public Map<String, Object> getDescription(int resourceId) {
-        return cache.get(resourceId);
+    // #6: retrieves the schema for a given resource ID from the cache. a resource that is not in the snapshot
+    // yet is loaded from the database, concurrent lookups of the same resource wait for that one load.
+    public ResourceSchema getSchema(int resourceId) {
+        return cache.get(resourceId, this::loadSchema).orElse(null);
     }
 
-    public record CsvFormat(String delimiter, String endLine) {}
+    public Map<String, Object> getDescription(int resourceId) {
+        ResourceSchema schema = getSchema(resourceId);
+        return schema == null ? null : schema.description();
+    }
 
     public CsvFormat getCsvFormat(int resourceId) {
-        return jdbcTemplate.query(
-                "SELECT DELIMITER, END_LINE FROM RESOURCE_DESCRIPTION WHERE RESOURCE_ID = ?",
-                new Object[]{resourceId},
-                rs -> rs.next() ? new CsvFormat(rs.getString("DELIMITER"), rs.getString("END_LINE")) : null
-        );
+        ResourceSchema schema = getSchema(resourceId);
+        return schema == null ? null : schema.csvFormat();
     }
 
     public String getFileType(int resourceId) {
-        return jdbcTemplate.queryForObject(
-                "SELECT FILE_TYPE FROM RESOURCE_DESCRIPTION WHERE RESOURCE_ID = ?",
-                new Object[]{resourceId},
-                String.class
+        ResourceSchema schema = getSchema(resourceId);
+        return schema == null ? null : schema.fileType();
+    }
+
+    public CacheStats getCacheStats() {
+        return retiredStats.plus(cache.stats());
+    }
+
+    // the cache metrics, bound by Spring Boot. they are read through getCacheStats(), so they keep counting across
+    // refreshes, when the cache they would be bound to is replaced.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", this, service -> service.getCacheStats().hitCount())
+                .tags("cache", "resources", "result", "hit")
+                .description("Resource lookups answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, service -> service.getCacheStats().missCount())
+                .tags("cache", "resources", "result", "miss")
+                .description("Resource lookups that went to the database")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, service -> service.getCacheStats().evictionCount())
+                .tags("cache", "resources")
+                .register(registry);
+        FunctionCounter.builder("cache.load.failures", this, service -> service.getCacheStats().loadFailureCount())
+                .tags("cache", "resources")
+                .register(registry);
+        Gauge.builder("cache.size", this, service -> service.cache.estimatedSize())
+                .tags("cache", "resources")
+                .register(registry);
+    }
+
+    // the version of every resource in RESOURCE_DESCRIPTION, a resource without fields has none for PROPS_DATA
+    private Map<Integer, String> loadVersions() {
+        Map<Integer, String> propsVersions = propsDataService.getPropsVersions(versionColumn);
+        Map<Integer, String> versions = new HashMap<>();
+        jdbcTemplate.query("SELECT RESOURCE_ID, " + versionColumn + " AS VERSION FROM RESOURCE_DESCRIPTION",
+                rs -> {
+                    int resourceId = rs.getInt("RESOURCE_ID");
+                    versions.put(resourceId, rs.getString("VERSION") + "|" + propsVersions.get(resourceId));
+                });
+        return versions;
+    }
+
+    private Map<Integer, ResourceSchema> loadAllSchemas() {
+        Map<Integer, Map<String, PropsDataService.PropsData>> propsData = propsDataService.getAllPropsData();
+        Map<Integer, ResourceSchema> schemas = new HashMap<>();
+        jdbcTemplate.query("SELECT " + DESCRIPTION_COLUMNS + " FROM RESOURCE_DESCRIPTION", rs -> {
+            ResourceSchema schema = toSchema(rs, propsData.getOrDefault(rs.getInt("RESOURCE_ID"), Map.of()));
+            schemas.put(schema.resourceId(), schema);
+        });
+        return schemas;
+    }
+
+    private Map<Integer, ResourceSchema> loadSchemas(List<Integer> resourceIds) {
+        if (resourceIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, Map<String, PropsDataService.PropsData>> propsData = propsDataService.getPropsData(resourceIds);
+        Map<Integer, ResourceSchema> schemas = new HashMap<>();
+        PropsDataService.queryByIds(jdbcTemplate,
+                "SELECT " + DESCRIPTION_COLUMNS + " FROM RESOURCE_DESCRIPTION WHERE RESOURCE_ID IN (%s)",
+                resourceIds, rs -> {
+                    ResourceSchema schema = toSchema(rs, propsData.getOrDefault(rs.getInt("RESOURCE_ID"), Map.of()));
+                    schemas.put(schema.resourceId(), schema);
+                });
+        return schemas;
+    }
+
+    // swaps in a cache holding every resource of the snapshot
+    private void install(Snapshot newSnapshot) {
+        Cache<Integer, Optional<ResourceSchema>> newCache = newCache();
+        newSnapshot.schemas().forEach((resourceId, schema) -> newCache.put(resourceId, Optional.of(schema)));
+        Cache<Integer, Optional<ResourceSchema>> oldCache = cache;
+        snapshot = newSnapshot;
+        cache = newCache;
+        retiredStats = retiredStats.plus(oldCache.stats());
+    }
+
+    private boolean readSnapshot() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return false;
+        }
+        try {
+            Snapshot read = objectMapper.readValue(snapshotPath.toFile(), Snapshot.class);
+            Map<Integer, ResourceSchema> schemas = new HashMap<>();
+            read.schemas().forEach((resourceId, schema) -> schemas.put(resourceId, new ResourceSchema(
+                    schema.resourceId(), schema.version(), schema.name(), schema.fileType(), schema.csvFormat(),
+                    schema.propsData())));
+            install(new Snapshot(Map.copyOf(schemas), Map.copyOf(read.versions())));
+            logger.info("Resource cache loaded with {} resources from {}", schemas.size(), snapshotPath);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read the resource snapshot {}, loading from the database: {}", snapshotPath,
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    // written next to the file and moved over it, a crash never leaves a half written snapshot behind
+    private void writeSnapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+        try {
+            Path directory = snapshotPath.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, snapshotPath.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), snapshot);
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write the resource snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private Optional<ResourceSchema> loadSchema(int resourceId) {
+        return Optional.ofNullable(jdbcTemplate.query(
+                "SELECT " + DESCRIPTION_COLUMNS + " FROM RESOURCE_DESCRIPTION WHERE RESOURCE_ID = ?",
+                rs -> rs.next() ? toSchema(rs, propsDataService.getPropsData(resourceId)) : null,
+                resourceId
+        ));
+    }
+
+    private Cache<Integer, Optional<ResourceSchema>> newCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    private static ResourceSchema toSchema(ResultSet rs, Map<String, PropsDataService.PropsData> propsData)
+            throws SQLException {
+        return new ResourceSchema(
+                rs.getInt("RESOURCE_ID"),
+                rs.getString("RESOURCE_VERSION"),
+                rs.getString("RESOURCE_NAME"),
+                rs.getString("FILE_TYPE"),
+                new CsvFormat(rs.getString("DELIMITER"), rs.getString("END_LINE")),
+                propsData
         );
     }
-}
\ No newline at end of file
+}
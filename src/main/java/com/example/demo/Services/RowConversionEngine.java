@@ -0,0 +1,244 @@
+package com.example.demo.Services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// converts rows in batches on a dedicated, sized executor instead of one CompletableFuture per line on the
+// common pool. the caller reads the lines, each batch becomes one task, and the converted batches are handed to
+// the sink in the order they were read, or as they complete. at most maxInFlight batches exist at a time, so memory
+// stays bounded by batchSize * maxInFlight rows and the reader waits when the sink or the workers fall behind.
+@Service
+public class RowConversionEngine {
+    private static final Logger logger = LoggerFactory.getLogger(RowConversionEngine.class);
+
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    // receives the converted batches, one at a time and in input order.
+    @FunctionalInterface
+    public interface BatchSink<R> {
+        void accept(List<R> batch) throws IOException;
+    }
+
+    // hands out the rows to convert one at a time on the calling thread, null after the last one.
+    @FunctionalInterface
+    public interface RowSource<T> {
+        T next() throws IOException;
+    }
+
+    // thrown when a line of a batch could not be converted. batches before it have already been sent.
+    public static class ConversionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ConversionException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    @Autowired
+    public RowConversionEngine(@Value("${zip.conversion.threads:0}") int threads,
+                               @Value("${zip.csv.chunk-size:5000}") int batchSize,
+                               @Value("${zip.conversion.max-in-flight:0}") int maxInFlight,
+                               @Value("${zip.conversion.virtual-threads:false}") boolean virtualThreads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : poolSize * 2;
+        this.executor = virtualThreads ? newVirtualThreadExecutor(poolSize) : newFixedExecutor(poolSize);
+    }
+
+    // #10: reads the remaining lines of the reader, converts them batch by batch in parallel, and hands the
+    // results to the sink in file order. the factory is called once per batch, so a converter can keep reusable
+    // buffers without being thread-safe. returns the number of converted lines that reached the sink.
+    public <R> long convert(BufferedReader reader, Supplier<? extends Function<String, R>> converterFactory,
+                            BatchSink<R> sink) throws IOException, ConversionException {
+        return convert(reader, converterFactory, sink, true);
+    }
+
+    // same as above, but with ordered false a batch is handed to the sink as soon as it is converted, which keeps
+    // the workers busy when batches take uneven time, at the cost of the file order.
+    public <R> long convert(BufferedReader reader, Supplier<? extends Function<String, R>> converterFactory,
+                            BatchSink<R> sink, boolean ordered) throws IOException, ConversionException {
+        return convert(reader::readLine, converterFactory, sink, ordered);
+    }
+
+    // the same for rows that are not lines of text, the decoded records of a binary file for instance. the source
+    // is read on the calling thread, a row it hands out must not be changed afterwards.
+    public <T, R> long convert(RowSource<T> source, Supplier<? extends Function<T, R>> converterFactory,
+                               BatchSink<R> sink, boolean ordered) throws IOException, ConversionException {
+        InFlightBatches<R> inFlight = ordered ? new OrderedBatches<>() : new CompletionOrderBatches<>(executor);
+        long rows = 0;
+        try {
+            List<T> batch = new ArrayList<>(batchSize);
+            T row;
+            while ((row = source.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    if (inFlight.size() == maxInFlight) {
+                        rows += emit(inFlight.next(), sink);
+                    }
+                    inFlight.submit(batchTask(batch, converterFactory));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                inFlight.submit(batchTask(batch, converterFactory));
+            }
+            while (inFlight.size() > 0) {
+                rows += emit(inFlight.next(), sink);
+            }
+            return rows;
+        } finally {
+            // only non-empty when a batch or the sink failed, the remaining batches are not needed anymore
+            inFlight.cancelAll();
+        }
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    private <T, R> Callable<List<R>> batchTask(List<T> rows, Supplier<? extends Function<T, R>> converterFactory) {
+        return () -> {
+            Function<T, R> converter = converterFactory.get();
+            List<R> converted = new ArrayList<>(rows.size());
+            for (T row : rows) {
+                converted.add(converter.apply(row));
+            }
+            return converted;
+        };
+    }
+
+    // the batches submitted by one convert call, next() waits for the one that goes to the sink next
+    private interface InFlightBatches<R> {
+        void submit(Callable<List<R>> batch);
+
+        Future<List<R>> next() throws InterruptedIOException;
+
+        int size();
+
+        void cancelAll();
+    }
+
+    private class OrderedBatches<R> implements InFlightBatches<R> {
+        private final Deque<Future<List<R>>> futures = new ArrayDeque<>(maxInFlight);
+
+        public void submit(Callable<List<R>> batch) {
+            futures.add(executor.submit(batch));
+        }
+
+        public Future<List<R>> next() {
+            return futures.poll();
+        }
+
+        public int size() {
+            return futures.size();
+        }
+
+        public void cancelAll() {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static class CompletionOrderBatches<R> implements InFlightBatches<R> {
+        private final CompletionService<List<R>> completionService;
+        private final Set<Future<List<R>>> pending = new HashSet<>();
+
+        CompletionOrderBatches(ExecutorService executor) {
+            this.completionService = new ExecutorCompletionService<>(executor);
+        }
+
+        public void submit(Callable<List<R>> batch) {
+            pending.add(completionService.submit(batch));
+        }
+
+        public Future<List<R>> next() throws InterruptedIOException {
+            try {
+                Future<List<R>> future = completionService.take();
+                pending.remove(future);
+                return future;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while converting rows");
+            }
+        }
+
+        public int size() {
+            return pending.size();
+        }
+
+        public void cancelAll() {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private <R> int emit(Future<List<R>> future, BatchSink<R> sink) throws IOException, ConversionException {
+        List<R> batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting rows");
+        } catch (ExecutionException e) {
+            throw new ConversionException(e.getCause());
+        }
+        sink.accept(batch);
+        return batch.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService newFixedExecutor(int poolSize) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "row-conversion-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    // virtual threads only exist from JDK 21 on, the project still targets 17, so look the factory up reflectively
+    // and fall back to the platform thread pool on older runtimes.
+    private static ExecutorService newVirtualThreadExecutor(int poolSize) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not available on Java {}, using {} platform threads for row conversion",
+                    Runtime.version().feature(), poolSize);
+            return newFixedExecutor(poolSize);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.demo.Services;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Formats.FormatReaders;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.ResultSink;
+import com.example.demo.Zip.ZipArchive;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+// the processing of one input message: opens the zip it points to, enriches its metadata and turns its entries into
+// result messages. it blocks for as long as the zip takes, so it runs on the zip job workers, never on a stream
+// thread. every message, the enriched metadata and every result message are only logged at DEBUG and TRACE.
+@Service
+public class ZipPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ZipPipeline.class);
+
+    private final ResourceDescriptionService resourceDescriptionService;
+    private final ZipProcessor zipProcessor;
+    private final FormatReaders formatReaders;
+    private final PipelineMetrics metrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public ZipPipeline(ResourceDescriptionService resourceDescriptionService, ZipProcessor zipProcessor,
+                       FormatReaders formatReaders, PipelineMetrics metrics) {
+        this.resourceDescriptionService = resourceDescriptionService;
+        this.zipProcessor = zipProcessor;
+        this.formatReaders = formatReaders;
+        this.metrics = metrics;
+    }
+
+    // #2: responsible for the extraction, enrichment, and processing of
+    // metadata and data entries from the zip file, and hands the messages to the sink the factory returns for the
+    // zip path. returns whether the zip was processed and all of its messages were written.
+    public boolean processZip(String value, Function<String, ResultSink> sinkFactory) {
+        return processZip(value, Map.of(), sinkFactory);
+    }
+
+    // same as above, continuing from the progress of the entries when the zip was interrupted, see
+    // ResultSink.checkpoint()
+    public boolean processZip(String value, Map<String, ZipProcessor.EntryProgress> resumeFrom,
+                              Function<String, ResultSink> sinkFactory) {
+        // make the code clear and not rely on extractZipPath method to throw exception because it won't be able
+        // to handle the case where the zipPath is not found or does not match the expected pattern.
+        if (value == null || value.trim().isEmpty()) {
+            metrics.rejected("empty");
+            return false;
+        }
+        try {
+            String zipPath = extractZipPath(value);
+            if (zipPath == null) {
+                metrics.rejected("no-zip-path");
+                return false;
+            }
+            // the zip is opened and its entries indexed once, every step below reads from this handle
+            Timer.Sample zipSample = metrics.start();
+            Timer.Sample openSample = metrics.start();
+            try (ZipArchive archive = ZipArchive.open(zipPath)) {
+                metrics.zipOpened(openSample);
+                return processArchive(archive, resumeFrom, sinkFactory, zipSample);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing zip or metadata: {}", e.getMessage());
+            metrics.rejected("failed");
+            return false;
+        }
+    }
+
+    // the size of the zip the message points to, 0 if it can't be told. the zip job scheduler runs small zips first.
+    public long zipSize(String value) {
+        try {
+            String zipPath = value == null || value.isBlank() ? null : extractZipPath(value);
+            return zipPath == null ? 0 : Files.size(Path.of(zipPath));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private boolean processArchive(ZipArchive archive, Map<String, ZipProcessor.EntryProgress> resumeFrom,
+                                   Function<String, ResultSink> sinkFactory, Timer.Sample zipSample)
+            throws IOException {
+        Map<String, Object> metadata = extractAndEnrichMetadata(archive);
+        if (metadata == null) {
+            metrics.rejected("no-metadata");
+            return false;
+        }
+        Integer resourceId = extractResourceId(metadata);
+        if (resourceId == null) {
+            metrics.rejected("no-resource-id");
+            return false;
+        }
+
+        // everything about the resource comes from one cached snapshot, no database round-trips here
+        Timer.Sample lookupSample = metrics.start();
+        ResourceDescriptionService.ResourceSchema schema = resourceDescriptionService.getSchema(resourceId);
+        metrics.resourceLookedUp(lookupSample, resourceId);
+        if (schema == null) {
+            logger.warn("Unknown RESOURCE_ID: {}", resourceId);
+            metrics.rejected("unknown-resource");
+            return false;
+        }
+        String fileType = schema.fileType();
+        FormatReader reader = formatReaders.forFileType(fileType);
+        if (reader == null) {
+            logger.warn("Unsupported file type: {}", fileType);
+            metrics.unsupported(resourceId, fileType);
+            return false;
+        }
+        PipelineMetrics.ResourceMeters meters = metrics.resource(resourceId, fileType);
+        // every message is the metadata, a line break and the row, the rows are written right behind this
+        byte[] valuePrefix = (objectMapper.writeValueAsString(metadata) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        // the zip only counts as processed once every one of its records is written
+        ResultSink sink = sinkFactory.apply(archive.path());
+        long rows = 0;
+        boolean processed = false;
+        boolean written = false;
+        Throwable failure = null;
+        try {
+            // rows are produced chunk by chunk while the rest of the zip is still being read
+            rows = zipProcessor.process(archive, reader, schema, valuePrefix, meters, resumeFrom,
+                    chunk -> sendJsonsToKafka(chunk, sink, meters), sink::checkpoint);
+            processed = true;
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // a failed entry fails the zip, whatever happened to the records that were sent before
+            try {
+                written = sink.finish() && processed;
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    throw e;
+                }
+                // the zip failed already, its own exception is the one that tells why
+                failure.addSuppressed(e);
+            } finally {
+                meters.zipDone(zipSample, rows, written);
+            }
+        }
+
+        return !metadata.isEmpty() && written;
+    }
+
+    // #3: parses the incoming JSON to extract the zipPath and validates it against
+    // the expected filename pattern.
+    private String extractZipPath(String value) throws Exception {
+        // convert the incoming JSON string to a JsonNode
+        JsonNode node = objectMapper.readTree(value);
+        String zipPath = node.path("zipPath").asText();
+
+        if (zipPath.matches(".*\\.zip$")) {
+            return zipPath;
+        }
+
+        return null;
+    }
+
+    // #4: reads metadata.json from the opened zip, enriches it with resource
+    // description from the cache, and returns the enriched metadata map.
+    private Map<String, Object> extractAndEnrichMetadata(ZipArchive archive) {
+        try {
+            ZipArchiveEntry metadataEntry = archive.entry("metadata.json");
+            if (metadataEntry == null) {
+                return null;
+            }
+            Timer.Sample parseSample = metrics.start();
+            try (InputStream is = archive.open(metadataEntry)) {
+                Map<String, Object> metadata = objectMapper.readValue(is, Map.class);
+                Integer resourceId = extractResourceId(metadata);
+                metrics.metadataParsed(parseSample, resourceId);
+                if (resourceId != null) {
+                    Timer.Sample lookupSample = metrics.start();
+                    Map<String, Object> resourceDesc = resourceDescriptionService.getDescription(resourceId);
+                    metrics.resourceLookedUp(lookupSample, resourceId);
+                    if (resourceDesc != null) {
+                        metadata.putAll(resourceDesc);
+                        logger.debug("Enriched Metadata: {}", metadata);
+                    } else {
+                        logger.warn("No resource description found for ID: {}", resourceId);
+                    }
+                } else {
+                    logger.warn("RESOURCE_ID not found in metadata.json of {}", archive.path());
+                }
+                return metadata;
+            }
+        } catch (Exception e) {
+            logger.error("Error extracting metadata: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // #5: extracts the resourceId from the metadata map, handling any parsing errors.
+    private Integer extractResourceId(Map<String, Object> metadata) {
+        Object resourceIdObj = metadata.get("resourceId");
+        if (resourceIdObj != null) {
+            try {
+                return Integer.parseInt(resourceIdObj.toString());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid RESOURCE_ID in metadata: {}", resourceIdObj);
+            }
+        }
+        return null;
+    }
+
+    // #11: hands the messages to the sink of the zip, they are keyed already
+    private void sendJsonsToKafka(List<ZipProcessor.OutputRecord> records, ResultSink sink,
+                                  PipelineMetrics.ResourceMeters meters) throws IOException {
+        boolean trace = logger.isTraceEnabled();
+        long bytes = 0;
+        for (ZipProcessor.OutputRecord record : records) {
+            if (trace) {
+                logger.trace("Sending message with key: {} and message:\n{}", record.key(),
+                        new String(record.value(), StandardCharsets.UTF_8));
+            }
+            sink.send(record.key(), record.value());
+            bytes += record.value().length;
+        }
+        meters.rowsSent(records.size(), bytes);
+    }
+}
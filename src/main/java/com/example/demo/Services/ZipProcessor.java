@@ -1,165 +1,172 @@
 package com.example.demo.Services;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Zip.ZipArchive;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
-import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
-import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ZipProcessor {
+    // the data entries of a zip are processed in parallel on this pool, zip.entries.parallelism at a time
+    private final ExecutorService entryExecutor;
+    // how many entries of one zip are on the pool at a time, so the entries of a big zip don't fill its queue
+    // and the zips processed at the same time share the pool
+    private final int maxEntriesPerZip;
+
+    // receives the converted rows one chunk (zip.csv.chunk-size rows) at a time. the entries of a zip are
+    // processed in parallel, so it is called from several threads at once.
+    @FunctionalInterface
+    public interface ChunkSink extends RowConversionEngine.BatchSink<OutputRecord> {
+    }
 
-    private final ResourceDescriptionService resourceDescriptionService;
-    private final PropsDataService propsDataService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // PER_ENTRY keeps the rows of every entry in file order, UNORDERED hands them over as they are converted
+    public enum EntryOrdering { PER_ENTRY, UNORDERED }
 
     @Autowired
-    public ZipProcessor(ResourceDescriptionService resourceDescriptionService, PropsDataService propsDataService) {
-        this.resourceDescriptionService = resourceDescriptionService;
-        this.propsDataService = propsDataService;
+    public ZipProcessor(@Value("${zip.entries.parallelism:0}") int entryParallelism,
+                        @Value("${zip.entries.max-per-zip:0}") int maxEntriesPerZip) {
+        int poolSize = entryParallelism > 0 ? entryParallelism : Runtime.getRuntime().availableProcessors();
+        this.maxEntriesPerZip = maxEntriesPerZip > 0 ? maxEntriesPerZip : poolSize;
+        AtomicInteger counter = new AtomicInteger();
+        this.entryExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "zip-entry-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public List<String> processZipJson(String zipPath) throws IOException {
-        List<String> jsonList = new ArrayList<>();
-        try (ZipFile zipFile = new ZipFile(zipPath)) {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            ObjectMapper mapper = new ObjectMapper();
-
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                String name = entry.getName();
-
-                if (name.endsWith(".json") && !name.equals("metadata.json")) {
-                    try (InputStream is = zipFile.getInputStream(entry)) {
-                        JsonNode node = mapper.readTree(is);
-
-                        if (node.isArray()) {
-                            for (JsonNode obj : node) {
-                                jsonList.add(mapper.writeValueAsString(obj));
-                            }
-                        } else if (node.isObject()) {
-                            jsonList.add(mapper.writeValueAsString(node));
-                        }
-                    }
-                }
-            }
-        }
-        return jsonList;
+    // how far an entry got: its first rows were sent, all of them if it is complete
+    public record EntryProgress(long rows, boolean complete) {
     }
 
-    // #7: processes a zip file containing a CSV, extracts the CSV
-    public List<String> processZipCsv(String zipPath, int resourceId) throws IOException {
-        List<String> jsonList = new ArrayList<>();
-
-        try (ZipFile zipFile = new ZipFile(zipPath)) {
-            ZipEntry csvEntry = findCsvEntry(zipFile);
-
-            Map<String, PropsDataService.PropsData> propsDataMap = propsDataService.getPropsData(resourceId);
-            List<String> fieldNames = propsDataService.getPropsFieldNames(resourceId);
-            ResourceDescriptionService.CsvFormat csvFormat = resourceDescriptionService.getCsvFormat(resourceId);
-
-            try (InputStream is = zipFile.getInputStream(csvEntry);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-
-                reader.readLine();
-                List<CompletableFuture<String>> futures = processCsvLinesAsync(reader, propsDataMap, fieldNames, csvFormat);
-
-                try {
-                    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-                    for (CompletableFuture<String> future : futures) {
-                        jsonList.add(future.join());
-                    }
-                } catch (CompletionException e) {
-                    System.err.println("CSV parsing failed: " + e.getCause().getMessage());
-                    return Collections.emptyList();
-                }
-            }
-        }
-
-        return jsonList;
+    // receives the progress of an entry after the chunks it counts reached the sink, from the thread that read
+    // them
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(String entry, long rows, boolean complete) throws IOException;
     }
 
-    private ZipEntry findCsvEntry(ZipFile zipFile) throws IOException {
-        return zipFile.stream()
-                .filter(e -> e.getName().endsWith(".csv"))
-                .findFirst()
-                .orElseThrow(() -> new FileNotFoundException("CSV not found in zip"));
+    // one message for output_results, ready to send. the key is the hash of the row values concatenated in field
+    // name order, computed by the KeyGenerator on the thread that converted the row.
+    public record OutputRecord(String key, byte[] value) {
     }
 
-    // #10: processes CSV lines asynchronously, converting each line to JSON, using DB field order.
-    private List<CompletableFuture<String>> processCsvLinesAsync(
-            BufferedReader reader, Map<String, PropsDataService.PropsData> propsDataMap
-            , List<String> fieldNames, ResourceDescriptionService.CsvFormat csvFormat
-    ) {
-        List<CompletableFuture<String>> futures = new ArrayList<>();
-        reader.lines().forEach(line ->
-                futures.add(CompletableFuture.supplyAsync(() ->
-                        processCsvLine(line, propsDataMap, fieldNames, csvFormat))));
-        return futures;
+    // reads every data entry of the zip with the reader of its format, in parallel. returns the number of rows sent.
+    public long process(ZipArchive archive, FormatReader reader, ResourceDescriptionService.ResourceSchema schema,
+                        byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, ChunkSink sink)
+            throws IOException {
+        return process(archive, reader, schema, valuePrefix, meters, Map.of(), sink, (entry, rows, complete) -> {
+        });
     }
 
-    private String processCsvLine(
-            String line, Map<String, PropsDataService.PropsData> propsDataMap
-            , List<String> fieldNames, ResourceDescriptionService.CsvFormat csvFormat
-    ) {
-        String delimiter = Pattern.quote(csvFormat.delimiter());
-        String[] values = line.split(delimiter, -1);
-        values[values.length - 1] = values[values.length - 1].replace(csvFormat.endLine(), "");
-
-        // Pad values if missing columns, for example, if phone number is empty
-        if (values.length < fieldNames.size()) {
-            values = Arrays.copyOf(values, fieldNames.size());
+    // same as above, continuing an interrupted run from the progress its entries had, by entry name: complete
+    // entries are left out and the others skip the rows they sent. the listener follows the progress chunk by
+    // chunk when the reader keeps the file order, entry by entry otherwise.
+    public long process(ZipArchive archive, FormatReader reader, ResourceDescriptionService.ResourceSchema schema,
+                        byte[] valuePrefix, PipelineMetrics.ResourceMeters meters,
+                        Map<String, EntryProgress> resumeFrom, ChunkSink sink, ProgressListener listener)
+            throws IOException {
+        List<ZipArchiveEntry> entries = new ArrayList<>();
+        for (ZipArchiveEntry entry : reader.dataEntries(archive)) {
+            EntryProgress resumed = resumeFrom.get(entry.getName());
+            if (resumed == null || !resumed.complete()) {
+                entries.add(entry);
+            }
         }
+        boolean rowsInFileOrder = reader.rowsInFileOrder();
+        return processEntries(entries, entry -> {
+            EntryProgress resumed = resumeFrom.get(entry.getName());
+            long skipRows = resumed == null ? 0 : resumed.rows();
+            ChunkSink entrySink = rowsInFileOrder ? new EntrySink(entry.getName(), skipRows, sink, listener) : sink;
+            long rows = reader.read(archive, entry, schema, valuePrefix, meters, skipRows, entrySink);
+            listener.progress(entry.getName(), skipRows + rows, true);
+            return rows;
+        });
+    }
 
-        Map<String, Object> jsonMap = new HashMap<>();
-
-        for (int i = 0; i < fieldNames.size(); i++) {
-            String fieldName = fieldNames.get(i);
-            String value = values[i];
-            PropsDataService.PropsData meta = propsDataMap.get(fieldName);
-            Object castedValue = castValue(value, meta);
-            jsonMap.put(fieldName, castedValue);
+    // hands the chunks of one entry to the sink and reports the rows of the entry sent after each of them
+    private static final class EntrySink implements ChunkSink {
+        private final String entry;
+        private final ChunkSink sink;
+        private final ProgressListener listener;
+        private long rows;
+
+        private EntrySink(String entry, long skipRows, ChunkSink sink, ProgressListener listener) {
+            this.entry = entry;
+            this.rows = skipRows;
+            this.sink = sink;
+            this.listener = listener;
         }
 
-        try {
-            return objectMapper.writeValueAsString(jsonMap);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse line: " + line, e);
+        @Override
+        public void accept(List<OutputRecord> chunk) throws IOException {
+            sink.accept(chunk);
+            rows += chunk.size();
+            listener.progress(entry, rows, false);
         }
     }
 
-    private Object castValue(String value, PropsDataService.PropsData meta) {
-        if (meta == null || value == null) return value;
-        return switch (meta.type()) {
-            case "float" -> {
-                try {
-                    yield Float.parseFloat(value);
-                } catch (Exception e) {
-                    yield value;
+    @FunctionalInterface
+    private interface EntryTask {
+        long process(ZipArchiveEntry entry) throws IOException;
+    }
+
+    // runs the task for every entry on the entry pool and returns the total number of rows, maxEntriesPerZip
+    // entries at a time. a single entry is processed on the calling thread. the entries are waited for in the order
+    // they end, so when one fails the others are cancelled right away and its exception is rethrown.
+    private long processEntries(List<ZipArchiveEntry> entries, EntryTask task) throws IOException {
+        if (entries.size() == 1) {
+            return task.process(entries.get(0));
+        }
+        CompletionService<Long> completed = new ExecutorCompletionService<>(entryExecutor);
+        List<Future<Long>> futures = new ArrayList<>(entries.size());
+        long rows = 0;
+        try {
+            for (ZipArchiveEntry entry : entries) {
+                if (futures.size() >= maxEntriesPerZip) {
+                    rows += completed.take().get();
                 }
+                futures.add(completed.submit(() -> task.process(entry)));
             }
-            case "boolean" -> {
-                try {
-                    yield Boolean.parseBoolean(value);
-                } catch (Exception e) {
-                    yield value;
-                }
+            for (int running = Math.min(futures.size(), maxEntriesPerZip); running > 0; running--) {
+                rows += completed.take().get();
             }
-            case "int", "integer" -> {
-                try {
-                    yield Integer.parseInt(value);
-                } catch (Exception e) {
-                    yield value;
-                }
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing zip entries");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-            default -> value;
-        };
+            throw new IOException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        entryExecutor.shutdownNow();
     }
 }
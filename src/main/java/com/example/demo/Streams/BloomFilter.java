@@ -0,0 +1,59 @@
+package com.example.demo.Streams;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// a Bloom filter over strings whose bits live in a direct buffer, off the heap, so even filters of hundreds of
+// megabytes add nothing to what the garbage collector has to scan. the bit positions are derived from one 128-bit
+// Murmur3 hash of the key by double hashing.
+class BloomFilter {
+    private final ByteBuffer bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // a direct buffer holds at most Integer.MAX_VALUE bytes, a whole number of longs of them
+        long words = Math.min(Math.max(1, (optimalBits + 63) / 64), Integer.MAX_VALUE / Long.BYTES);
+        this.bitCount = words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+        this.bits = ByteBuffer.allocateDirect((int) (words * Long.BYTES));
+    }
+
+    long sizeInBytes() {
+        return bits.capacity();
+    }
+
+    void put(String key) {
+        long[] hash = hash(key);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash[0] + i * hash[1], bitCount);
+            int index = (int) (bit >>> 6) * Long.BYTES;
+            bits.putLong(index, bits.getLong(index) | (1L << bit));
+        }
+    }
+
+    // false if the key was never put, true if it probably was
+    boolean mightContain(String key) {
+        long[] hash = hash(key);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash[0] + i * hash[1], bitCount);
+            if ((bits.getLong((int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        for (int index = 0; index < bits.capacity(); index += Long.BYTES) {
+            bits.putLong(index, 0);
+        }
+    }
+
+    private static long[] hash(String key) {
+        return MurmurHash3.hash128x64(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
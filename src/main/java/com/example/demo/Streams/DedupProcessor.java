@@ -0,0 +1,139 @@
+package com.example.demo.Streams;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+// drops the result messages whose key, the hash of the row, was already forwarded within the retention window.
+// the keys are remembered in a window store, so they survive restarts and expire with its segments. the optional
+// Bloom filter answers most lookups of new keys without going to RocksDB. it cannot forget single keys, so there
+// are two of them: keys go into the current one, lookups check both, and every retention period the older one is
+// cleared and becomes the current one. that way a key stays in a filter for at least the retention window. the
+// period is measured in stream time, like the segments of the store, so reprocessing old records or a pause in the
+// input doesn't clear keys the store still holds.
+class DedupProcessor implements Processor<String, byte[], String, byte[]> {
+    private static final Logger logger = LoggerFactory.getLogger(DedupProcessor.class);
+
+    private final Duration retention;
+    private final long bloomExpectedKeys;
+    private final double bloomFalsePositiveRate;
+
+    private ProcessorContext<String, byte[]> context;
+    private WindowStore<String, Long> store;
+    private BloomFilter currentFilter;
+    private BloomFilter previousFilter;
+    private long filterRotatedAt;
+    private Sensor records;
+    private Sensor duplicates;
+    private Sensor filterNegatives;
+
+    // bloomExpectedKeys 0 disables the filter
+    DedupProcessor(Duration retention, long bloomExpectedKeys, double bloomFalsePositiveRate) {
+        this.retention = retention;
+        this.bloomExpectedKeys = bloomExpectedKeys;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, byte[]> context) {
+        this.context = context;
+        this.store = context.getStateStore(DedupProcessorSupplier.DEDUP_STORE);
+        // the hit rate is duplicates-total / records-total, filter-negatives-total / records-total is the share of
+        // lookups the filter answered without the store
+        String task = context.taskId().toString();
+        this.records = context.metrics().addRateTotalSensor("dedup", task, "records", Sensor.RecordingLevel.INFO);
+        this.duplicates = context.metrics().addRateTotalSensor("dedup", task, "duplicates", Sensor.RecordingLevel.INFO);
+        this.filterNegatives = context.metrics().addRateTotalSensor("dedup", task, "filter-negatives",
+                Sensor.RecordingLevel.INFO);
+
+        if (bloomExpectedKeys > 0) {
+            currentFilter = new BloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+            previousFilter = new BloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+            // the filters are not persisted, they start out with every key the store still holds and are not
+            // rotated before the newest of them has been in a filter for the retention window
+            filterRotatedAt = Long.MIN_VALUE;
+            long keys = 0;
+            try (KeyValueIterator<Windowed<String>, Long> iterator = store.all()) {
+                while (iterator.hasNext()) {
+                    KeyValue<Windowed<String>, Long> entry = iterator.next();
+                    currentFilter.put(entry.key.key());
+                    filterRotatedAt = Math.max(filterRotatedAt, entry.value);
+                    keys++;
+                }
+            }
+            logger.info("Dedup filters of task {} hold {} keys, {} bytes off-heap each", task, keys,
+                    currentFilter.sizeInBytes());
+            // checked every tenth of the retention, a rotation is at most that late
+            Duration rotationCheck = retention.dividedBy(10);
+            context.schedule(rotationCheck.isZero() ? Duration.ofMillis(1) : rotationCheck,
+                    PunctuationType.STREAM_TIME, this::rotateFilters);
+        }
+    }
+
+    @Override
+    public void process(Record<String, byte[]> record) {
+        String key = record.key();
+        if (key == null) {
+            context.forward(record);
+            return;
+        }
+        records.record();
+        long timestamp = record.timestamp();
+        if (isDuplicate(key, timestamp)) {
+            duplicates.record();
+            return;
+        }
+        store.put(key, timestamp, timestamp);
+        if (currentFilter != null) {
+            currentFilter.put(key);
+        }
+        context.forward(record);
+    }
+
+    private boolean isDuplicate(String key, long timestamp) {
+        if (currentFilter != null) {
+            if (!currentFilter.mightContain(key) && !previousFilter.mightContain(key)) {
+                filterNegatives.record();
+                return false;
+            }
+        }
+        long window = retention.toMillis();
+        try (WindowStoreIterator<Long> iterator = store.fetch(key, timestamp - window, timestamp + window)) {
+            return iterator.hasNext();
+        }
+    }
+
+    // streamTime is the stream time of the task when the punctuator runs
+    private void rotateFilters(long streamTime) {
+        if (filterRotatedAt == Long.MIN_VALUE) {
+            // the store was empty, the period starts with the first records
+            filterRotatedAt = streamTime;
+        } else if (streamTime - filterRotatedAt >= retention.toMillis()) {
+            BloomFilter cleared = previousFilter;
+            cleared.clear();
+            previousFilter = currentFilter;
+            currentFilter = cleared;
+            filterRotatedAt = streamTime;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (records != null) {
+            context.metrics().removeSensor(records);
+            context.metrics().removeSensor(duplicates);
+            context.metrics().removeSensor(filterNegatives);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.Streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+
+// creates the DedupProcessor of every stream task, with its store of the keys forwarded within dedup.retention.
+// the stage is only part of the topology when dedup.enabled is set.
+@Component
+public class DedupProcessorSupplier implements ProcessorSupplier<String, byte[], String, byte[]> {
+    public static final String DEDUP_STORE = "dedup-keys";
+
+    private final Duration retention;
+    private final long bloomExpectedKeys;
+    private final double bloomFalsePositiveRate;
+
+    @Autowired
+    public DedupProcessorSupplier(@Value("${dedup.retention:7d}") Duration retention,
+                                  @Value("${dedup.bloom.expected-keys:0}") long bloomExpectedKeys,
+                                  @Value("${dedup.bloom.false-positive-rate:0.01}") double bloomFalsePositiveRate) {
+        this.retention = retention;
+        this.bloomExpectedKeys = bloomExpectedKeys;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+    }
+
+    @Override
+    public Processor<String, byte[], String, byte[]> get() {
+        return new DedupProcessor(retention, bloomExpectedKeys, bloomFalsePositiveRate);
+    }
+
+    // one window per key and timestamp, as long as the retention. segments older than the retention are dropped
+    // as a whole, which is what expires the keys.
+    @Override
+    public Set<StoreBuilder<?>> stores() {
+        return Set.of(Stores.windowStoreBuilder(
+                Stores.persistentWindowStore(DEDUP_STORE, retention, retention, false),
+                Serdes.String(), Serdes.Long()));
+    }
+}
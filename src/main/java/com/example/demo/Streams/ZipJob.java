@@ -0,0 +1,184 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Output.ResultSink;
+import com.example.demo.Services.ZipProcessor;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.streams.KeyValue;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// one input message being processed on the zip job workers. with output.mode=STREAMS the worker puts the result
+// messages into a queue and the stream thread takes them out and forwards them, so they are written by the
+// Streams producer. the queue is bounded by records and by bytes, which is what a job can hold on the heap. a full
+// queue makes the worker wait, which holds the reading of the zip back to the pace of the stream thread.
+//
+// with checkpoints on, the progress the worker reports is queued behind the records it counts, so by the time the
+// stream thread takes it out those records were forwarded and the progress can be stored with them.
+class ZipJob implements ResultSink {
+    private final String id;
+    private final String value;
+    private final long timestamp;
+    // the records to forward, KeyValue, and the progress behind them, Checkpoint
+    private final BlockingQueue<Object> output;
+    // a permit per queued byte, a record larger than the whole bound takes all of them
+    private final Semaphore queuedBytes;
+    private final int queueMaxBytes;
+    private final Timer outputWait;
+    private final boolean checkpoints;
+    // the progress the job was resumed from, and the progress of the forwarded records, by entry name
+    private final Map<String, ZipProcessor.EntryProgress> resumeFrom;
+    private final Map<String, ZipProcessor.EntryProgress> progress;
+    private boolean progressChanged;
+    // set on the stream thread once the job is submitted, read by the worker in finish()
+    private volatile Future<Boolean> future;
+    // a record or a progress could not be queued
+    private volatile boolean failed;
+    private long forwarded;
+
+    private record Checkpoint(String entry, ZipProcessor.EntryProgress progress) {
+    }
+
+    ZipJob(String id, String value, long timestamp, int queueCapacity, int queueMaxBytes, Timer outputWait,
+           boolean checkpoints, Map<String, ZipProcessor.EntryProgress> resumeFrom) {
+        this.id = id;
+        this.value = value;
+        this.timestamp = timestamp;
+        this.output = new ArrayBlockingQueue<>(queueCapacity);
+        this.queuedBytes = new Semaphore(queueMaxBytes);
+        this.queueMaxBytes = queueMaxBytes;
+        this.outputWait = outputWait;
+        this.checkpoints = checkpoints;
+        this.resumeFrom = Map.copyOf(resumeFrom);
+        this.progress = new HashMap<>(resumeFrom);
+    }
+
+    String id() {
+        return id;
+    }
+
+    String value() {
+        return value;
+    }
+
+    long timestamp() {
+        return timestamp;
+    }
+
+    Map<String, ZipProcessor.EntryProgress> resumeFrom() {
+        return resumeFrom;
+    }
+
+    void start(Future<Boolean> future) {
+        this.future = future;
+    }
+
+    @Override
+    public void send(String key, byte[] value) throws InterruptedIOException {
+        KeyValue<String, byte[]> record = KeyValue.pair(key, value);
+        int bytes = permits(value);
+        boolean reserved = queuedBytes.tryAcquire(bytes);
+        if (reserved && output.offer(record)) {
+            return;
+        }
+        long waitStarted = System.nanoTime();
+        try {
+            if (!reserved) {
+                queuedBytes.acquire(bytes);
+            }
+            output.put(record);
+            outputWait.record(System.nanoTime() - waitStarted, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            throw new InterruptedIOException("Interrupted while queueing the output of zip job " + id);
+        }
+    }
+
+    @Override
+    public void checkpoint(String entry, long rows, boolean complete) throws InterruptedIOException {
+        if (!checkpoints) {
+            return;
+        }
+        try {
+            output.put(new Checkpoint(entry, new ZipProcessor.EntryProgress(rows, complete)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            throw new InterruptedIOException("Interrupted while queueing the progress of zip job " + id);
+        }
+    }
+
+    // the forwarded records are written, and committed together with the input offsets, by Kafka Streams. what
+    // the worker queued is forwarded unless the job was cancelled, by a rebalance or the shutdown, or a record
+    // never made it into the queue.
+    @Override
+    public boolean finish() {
+        Future<Boolean> started = future;
+        return !failed && !(started != null && started.isCancelled());
+    }
+
+    // the next record to forward or null, called on the stream thread. the progress queued before it is taken
+    // over on the way.
+    @SuppressWarnings("unchecked")
+    KeyValue<String, byte[]> poll() {
+        Object next;
+        while ((next = output.poll()) != null) {
+            if (next instanceof Checkpoint checkpoint) {
+                progress.put(checkpoint.entry(), checkpoint.progress());
+                progressChanged = true;
+                continue;
+            }
+            KeyValue<String, byte[]> record = (KeyValue<String, byte[]>) next;
+            forwarded++;
+            queuedBytes.release(permits(record.value));
+            return record;
+        }
+        return null;
+    }
+
+    // the progress of the forwarded records if it changed since the last call, otherwise null
+    Map<String, ZipProcessor.EntryProgress> takeProgress() {
+        if (!progressChanged) {
+            return null;
+        }
+        progressChanged = false;
+        return progress;
+    }
+
+    private int permits(byte[] value) {
+        return Math.min(value.length, queueMaxBytes);
+    }
+
+    long forwarded() {
+        return forwarded;
+    }
+
+    // the worker is done and every record it queued was forwarded. the worker queues all of its records before it
+    // completes, so once it is done an empty queue stays empty.
+    boolean isFinished() {
+        return future.isDone() && output.isEmpty();
+    }
+
+    boolean succeeded() {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    void cancel() {
+        future.cancel(true);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Output.OutputStage;
+import com.example.demo.Services.ZipPipeline;
+import com.example.demo.Services.ZipProcessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.Cancellable;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// takes the zip messages of one task off the stream thread. every message becomes a job of the ZipJobScheduler and
+// is recorded in the job store, the stream thread goes straight back to polling. a wall-clock punctuator forwards
+// what the jobs produced, a bounded number of records per run shared between the jobs, and drops a job from the
+// store once all of its records are forwarded. the store is committed with the input offsets, so jobs that did not
+// finish before a crash or rebalance are started again by whichever instance gets the task, in offset order. an
+// input offset can be committed before its job is done because the job stays in the store until then: jobs finish
+// in any order, but nothing after the oldest unfinished one is lost.
+//
+// a resumed job would send its zip again from the first row. with checkpoints on, the progress of every job, the
+// rows of each entry that were forwarded, is kept in the progress store and committed in the same transaction as
+// those records, and a resumed job skips what was forwarded.
+class ZipJobProcessor implements Processor<String, String, String, byte[]> {
+    private static final Logger logger = LoggerFactory.getLogger(ZipJobProcessor.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, ZipProcessor.EntryProgress>> PROGRESS_TYPE =
+            new TypeReference<>() {
+            };
+
+    private final ZipPipeline pipeline;
+    private final OutputStage outputStage;
+    private final ZipJobScheduler scheduler;
+    private final ZipJobProcessorSupplier.OutputMode outputMode;
+    private final int queueCapacity;
+    private final int queueMaxBytes;
+    private final Duration drainInterval;
+    private final int maxForwardsPerDrain;
+    private final Timer outputWait;
+    private final Timer forward;
+    private final boolean checkpoints;
+    // the running jobs of this task, only touched on the stream thread
+    private final Map<String, ZipJob> jobs = new LinkedHashMap<>();
+
+    private ProcessorContext<String, byte[]> context;
+    private KeyValueStore<String, String> jobStore;
+    // the progress of the jobs as JSON, by job id
+    private KeyValueStore<String, String> progressStore;
+    private Cancellable punctuator;
+
+    ZipJobProcessor(ZipPipeline pipeline, OutputStage outputStage, ZipJobScheduler scheduler,
+                    ZipJobProcessorSupplier.OutputMode outputMode, int queueCapacity, int queueMaxBytes,
+                    Duration drainInterval, int maxForwardsPerDrain, Timer outputWait, Timer forward,
+                    boolean checkpoints) {
+        this.pipeline = pipeline;
+        this.outputStage = outputStage;
+        this.scheduler = scheduler;
+        this.outputMode = outputMode;
+        this.queueCapacity = queueCapacity;
+        this.queueMaxBytes = queueMaxBytes;
+        this.drainInterval = drainInterval;
+        this.maxForwardsPerDrain = maxForwardsPerDrain;
+        this.outputWait = outputWait;
+        this.forward = forward;
+        this.checkpoints = checkpoints;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, byte[]> context) {
+        this.context = context;
+        this.jobStore = context.getStateStore(ZipJobProcessorSupplier.JOB_STORE);
+        this.progressStore = context.getStateStore(ZipJobProcessorSupplier.PROGRESS_STORE);
+        this.punctuator = context.schedule(drainInterval, PunctuationType.WALL_CLOCK_TIME, this::drain);
+
+        // the store is restored before init, what is left in it did not finish under the previous owner
+        List<KeyValue<String, String>> unfinished = new ArrayList<>();
+        try (KeyValueIterator<String, String> iterator = jobStore.all()) {
+            iterator.forEachRemaining(unfinished::add);
+        }
+        // the store is sorted by the id as a string, where offset 10 comes before offset 9
+        unfinished.sort(Comparator.comparing((KeyValue<String, String> job) -> partitionOf(job.key))
+                .thenComparingLong(job -> offsetOf(job.key)));
+        for (KeyValue<String, String> job : unfinished) {
+            Map<String, ZipProcessor.EntryProgress> resumeFrom = checkpoints ? readProgress(job.key) : Map.of();
+            logger.info("Resuming zip job {} of task {}, {} rows of {} entries already forwarded", job.key,
+                    context.taskId(), resumeFrom.values().stream().mapToLong(ZipProcessor.EntryProgress::rows).sum(),
+                    resumeFrom.size());
+            start(new ZipJob(job.key, job.value, context.currentSystemTimeMs(), queueCapacity, queueMaxBytes,
+                    outputWait, checkpoints, resumeFrom));
+        }
+    }
+
+    @Override
+    public void process(Record<String, String> record) {
+        String id = context.recordMetadata()
+                .map(ZipJobProcessor::jobId)
+                .orElseGet(() -> UUID.randomUUID().toString());
+        // under at_least_once the store can hold the job of a record whose offset was never committed. init()
+        // resumed it already, starting it again would convert the zip twice and leave the running job undrained.
+        if (jobs.containsKey(id) || jobStore.get(id) != null) {
+            logger.info("Zip job {} of task {} is already running, redelivered record skipped", id, context.taskId());
+            return;
+        }
+        jobStore.put(id, record.value());
+        start(new ZipJob(id, record.value(), record.timestamp(), queueCapacity, queueMaxBytes, outputWait,
+                checkpoints, Map.of()));
+    }
+
+    // a progress that can't be read is dropped, the job starts over
+    private Map<String, ZipProcessor.EntryProgress> readProgress(String jobId) {
+        String progress = progressStore.get(jobId);
+        if (progress == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(progress, PROGRESS_TYPE);
+        } catch (JsonProcessingException e) {
+            logger.warn("Unreadable progress of zip job {}, starting over: {}", jobId, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void writeProgress(String jobId, Map<String, ZipProcessor.EntryProgress> progress) {
+        try {
+            progressStore.put(jobId, objectMapper.writeValueAsString(progress));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to write the progress of zip job " + jobId, e);
+        }
+    }
+
+    private static String jobId(RecordMetadata metadata) {
+        return metadata.topic() + "-" + metadata.partition() + "@" + metadata.offset();
+    }
+
+    // the topic-partition of the id, the whole id for the ids of records without metadata
+    private static String partitionOf(String jobId) {
+        int at = jobId.lastIndexOf('@');
+        return at < 0 ? jobId : jobId.substring(0, at);
+    }
+
+    private static long offsetOf(String jobId) {
+        int at = jobId.lastIndexOf('@');
+        try {
+            return at < 0 ? -1 : Long.parseLong(jobId.substring(at + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // the size of the zip decides when the scheduler runs the job, small zips go first. it is read on a worker,
+    // the stream thread doesn't touch the zip.
+    private void start(ZipJob job) {
+        jobs.put(job.id(), job);
+        job.start(scheduler.submit(() -> pipeline.processZip(job.value(), job.resumeFrom(),
+                zipPath -> outputMode == ZipJobProcessorSupplier.OutputMode.PRODUCER
+                        ? outputStage.newDelivery(zipPath)
+                        : job), () -> pipeline.zipSize(job.value())));
+    }
+
+    // forwards up to maxForwardsPerDrain records, split evenly between the running jobs so a big zip does not
+    // hold back the small ones, stores the progress of what was forwarded and retires the jobs that are finished
+    private void drain(long timestamp) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        int share = Math.max(1, maxForwardsPerDrain / jobs.size());
+        long started = System.nanoTime();
+        boolean forwarded = false;
+        Iterator<ZipJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            ZipJob job = iterator.next();
+            KeyValue<String, byte[]> record;
+            for (int i = 0; i < share && (record = job.poll()) != null; i++) {
+                context.forward(new Record<>(record.key, record.value, job.timestamp()));
+                forwarded = true;
+            }
+            Map<String, ZipProcessor.EntryProgress> progress = job.takeProgress();
+            if (job.isFinished()) {
+                iterator.remove();
+                jobStore.delete(job.id());
+                if (checkpoints) {
+                    progressStore.delete(job.id());
+                }
+                if (job.succeeded()) {
+                    logger.info("Zip job {} done, {} records forwarded", job.id(), job.forwarded());
+                } else {
+                    logger.warn("Zip job {} failed, {} records forwarded", job.id(), job.forwarded());
+                }
+            } else if (progress != null) {
+                writeProgress(job.id(), progress);
+            }
+        }
+        if (forwarded) {
+            forward.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the task moves to another thread or instance, or the application stops. the jobs stay in the store and are
+    // started again by the next owner.
+    @Override
+    public void close() {
+        if (punctuator != null) {
+            punctuator.cancel();
+        }
+        jobs.values().forEach(ZipJob::cancel);
+        jobs.clear();
+    }
+}
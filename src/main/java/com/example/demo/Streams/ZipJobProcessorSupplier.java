@@ -0,0 +1,106 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.OutputStage;
+import com.example.demo.Services.ZipPipeline;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Set;
+
+// creates the ZipJobProcessor of every stream task and owns what they share: the scheduler of the zip jobs, with
+// zip.jobs.workers threads for all tasks of the instance, and the job and progress stores, which are connected to
+// the processor through stores().
+@Component
+public class ZipJobProcessorSupplier implements ProcessorSupplier<String, String, String, byte[]> {
+    private static final Logger logger = LoggerFactory.getLogger(ZipJobProcessorSupplier.class);
+    public static final String JOB_STORE = "zip-jobs";
+    public static final String PROGRESS_STORE = "zip-progress";
+
+    // STREAMS forwards the results to the topology and writes them with the Streams producer, exactly-once when
+    // processing.guarantee is exactly_once_v2. PRODUCER sends them from the workers through the OutputStage.
+    public enum OutputMode { STREAMS, PRODUCER }
+
+    private final ZipPipeline pipeline;
+    private final OutputStage outputStage;
+    private final OutputMode outputMode;
+    private final int queueCapacity;
+    private final int queueMaxBytes;
+    private final Duration drainInterval;
+    private final int maxForwardsPerDrain;
+    private final ZipJobScheduler scheduler;
+    private final Timer outputWait;
+    private final Timer forward;
+    private final boolean checkpoints;
+
+    @Autowired
+    public ZipJobProcessorSupplier(ZipPipeline pipeline, OutputStage outputStage, PipelineMetrics metrics,
+                                   @Value("${output.mode:STREAMS}") OutputMode outputMode,
+                                   @Value("${zip.jobs.workers:0}") int workers,
+                                   @Value("${zip.jobs.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${zip.jobs.queue-max-bytes:64MB}") DataSize queueMaxBytes,
+                                   @Value("${zip.jobs.drain-interval:100ms}") Duration drainInterval,
+                                   @Value("${zip.jobs.max-forwards-per-drain:50000}") int maxForwardsPerDrain,
+                                   @Value("${zip.jobs.large-size:256MB}") DataSize largeSize,
+                                   @Value("${zip.jobs.max-large:0}") int maxLargeJobs,
+                                   @Value("${zip.jobs.aging:30s}") Duration aging,
+                                   @Value("${zip.jobs.checkpoints:true}") boolean checkpoints,
+                                   @Value("${spring.kafka.streams.properties.processing.guarantee:at_least_once}")
+                                   String processingGuarantee) {
+        this.pipeline = pipeline;
+        this.outputStage = outputStage;
+        this.outputMode = outputMode;
+        this.queueCapacity = queueCapacity;
+        this.queueMaxBytes = (int) Math.min(Integer.MAX_VALUE, queueMaxBytes.toBytes());
+        this.drainInterval = drainInterval;
+        this.maxForwardsPerDrain = maxForwardsPerDrain;
+        this.outputWait = metrics.outputWait();
+        this.forward = metrics.forward();
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.scheduler = new ZipJobScheduler(poolSize, largeSize.toBytes(),
+                maxLargeJobs > 0 ? maxLargeJobs : Math.max(1, poolSize / 2), aging.toNanos(), metrics);
+        // the progress is only as good as the records it counts: it needs the Streams producer, and a transaction
+        // to commit it together with them. at least once could store it while its records are lost.
+        boolean exactlyOnce = StreamsConfig.EXACTLY_ONCE_V2.equals(processingGuarantee);
+        this.checkpoints = checkpoints && outputMode == OutputMode.STREAMS && exactlyOnce;
+        if (checkpoints && !this.checkpoints) {
+            logger.info("Zip job checkpoints need output.mode=STREAMS and processing.guarantee={}, "
+                    + "interrupted zips are processed again from the start", StreamsConfig.EXACTLY_ONCE_V2);
+        }
+    }
+
+    @Override
+    public Processor<String, String, String, byte[]> get() {
+        return new ZipJobProcessor(pipeline, outputStage, scheduler, outputMode, queueCapacity, queueMaxBytes,
+                drainInterval, maxForwardsPerDrain, outputWait, forward, checkpoints);
+    }
+
+    // the input messages of the jobs that are not finished yet and their progress, by job id. they are backed by
+    // changelog topics, so they survive the instance.
+    @Override
+    public Set<StoreBuilder<?>> stores() {
+        return Set.of(
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(JOB_STORE), Serdes.String(), Serdes.String()),
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(PROGRESS_STORE), Serdes.String(), Serdes.String()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// runs the zip jobs of every task of the instance on a fixed number of workers. a free worker does not take the
+// oldest job but the one of the smallest zip: the size class of a zip is the log2 of its size and drops by one for
+// every aging period the job waited, so a small zip overtakes the big ones queued before it, and a big one still
+// gets its turn. at most maxLargeJobs workers run zips of largeSize or more at a time, the others stay free for
+// the small zips, which keeps their latency low while the big ones are processed. the size of a zip is read by the
+// next worker looking for a job, never by the caller of submit(), a stream thread that must not wait for the disk.
+class ZipJobScheduler {
+    private final long largeSize;
+    private final int maxLargeJobs;
+    private final long agingNanos;
+    private final Timer smallJobWait;
+    private final Timer largeJobWait;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // signalled when a job is submitted or sized and when a large job ends
+    private final Condition changed = lock.newCondition();
+    // submitted jobs whose size is not known yet
+    private final List<SubmittedJob> unsized = new ArrayList<>();
+    private final List<QueuedJob> queue = new ArrayList<>();
+    // submitted jobs a worker is reading the size of
+    private int sizing;
+    private int running;
+    private int runningLarge;
+    private long sequence;
+    private volatile boolean shutdown;
+
+    private record SubmittedJob(FutureTask<Boolean> task, LongSupplier size, long queuedAt, long sequence) {
+    }
+
+    private record QueuedJob(FutureTask<Boolean> task, int sizeClass, boolean large, long queuedAt, long sequence) {
+    }
+
+    ZipJobScheduler(int workerCount, long largeSize, int maxLargeJobs, long agingNanos, PipelineMetrics metrics) {
+        this.largeSize = largeSize;
+        this.maxLargeJobs = Math.max(1, maxLargeJobs);
+        this.agingNanos = Math.max(1, agingNanos);
+        this.smallJobWait = metrics.jobWait("small");
+        this.largeJobWait = metrics.jobWait("large");
+        metrics.jobs(this, scheduler -> scheduler.count(false), scheduler -> scheduler.count(true));
+        for (int i = 1; i <= workerCount; i++) {
+            Thread thread = new Thread(this::work, "zip-job-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+    }
+
+    // queues the work of a zip. size tells the size of the zip in bytes, 0 if it is not known, and is called on a
+    // worker. cancelling the future removes a job that has not started and interrupts one that is running.
+    Future<Boolean> submit(Callable<Boolean> work, LongSupplier size) {
+        FutureTask<Boolean> task = new FutureTask<>(work);
+        lock.lock();
+        try {
+            unsized.add(new SubmittedJob(task, size, System.nanoTime(), sequence++));
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    private void work() {
+        while (!shutdown) {
+            QueuedJob job;
+            try {
+                job = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                job.task().run();
+            } finally {
+                lock.lock();
+                try {
+                    running--;
+                    if (job.large()) {
+                        runningLarge--;
+                        changed.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                // a job cancelled while running leaves the interrupt behind, it is not meant for the next one
+                Thread.interrupted();
+            }
+        }
+    }
+
+    // the job with the lowest size class after aging, the first queued of those. large jobs are passed over
+    // while maxLargeJobs of them run. jobs submitted since the last call are sized first, outside the lock, so
+    // the choice is made among all of them.
+    private QueuedJob take() throws InterruptedException {
+        while (true) {
+            List<SubmittedJob> toSize;
+            lock.lockInterruptibly();
+            try {
+                while (unsized.isEmpty()) {
+                    QueuedJob next = next();
+                    if (next != null) {
+                        return next;
+                    }
+                    changed.await();
+                }
+                toSize = new ArrayList<>(unsized);
+                unsized.clear();
+                sizing += toSize.size();
+            } finally {
+                lock.unlock();
+            }
+            queueSized(toSize);
+        }
+    }
+
+    private void queueSized(List<SubmittedJob> toSize) {
+        List<QueuedJob> sized = new ArrayList<>(toSize.size());
+        for (SubmittedJob job : toSize) {
+            if (!job.task().isCancelled()) {
+                long size = sizeOf(job);
+                int sizeClass = size <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(size);
+                sized.add(new QueuedJob(job.task(), sizeClass, size >= largeSize, job.queuedAt(), job.sequence()));
+            }
+        }
+        lock.lock();
+        try {
+            sizing -= toSize.size();
+            queue.addAll(sized);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a zip whose size can't be read runs with the priority of an unknown size
+    private static long sizeOf(SubmittedJob job) {
+        try {
+            return job.size().getAsLong();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // takes the next job off the queue, null if there is none that may run now. called with the lock held.
+    private QueuedJob next() {
+        queue.removeIf(job -> job.task().isCancelled());
+        long now = System.nanoTime();
+        QueuedJob next = null;
+        long nextScore = 0;
+        for (QueuedJob job : queue) {
+            if (job.large() && runningLarge >= maxLargeJobs) {
+                continue;
+            }
+            long score = job.sizeClass() * agingNanos - (now - job.queuedAt());
+            if (next == null || score < nextScore || score == nextScore && job.sequence() < next.sequence()) {
+                next = job;
+                nextScore = score;
+            }
+        }
+        if (next != null) {
+            queue.remove(next);
+            running++;
+            if (next.large()) {
+                runningLarge++;
+            }
+            (next.large() ? largeJobWait : smallJobWait).record(now - next.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+        return next;
+    }
+
+    private int count(boolean runningJobs) {
+        lock.lock();
+        try {
+            return runningJobs ? running : queue.size() + unsized.size() + sizing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void shutdown() {
+        shutdown = true;
+        workers.forEach(Thread::interrupt);
+    }
+}
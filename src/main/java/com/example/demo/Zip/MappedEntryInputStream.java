@@ -0,0 +1,115 @@
+package com.example.demo.Zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// reads a region of a file through memory mappings of at most WINDOW_SIZE bytes, so entries larger than the 2 GB
+// a single mapping can cover work too. a window is mapped when the reader reaches it and dropped right after.
+// there is no way to unmap a window: dropping it, on close() too, only leaves its mapping to be released when the
+// garbage collector collects the buffer.
+class MappedEntryInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long windowSize;
+    private final long end;
+    private long windowStart;
+    private MappedByteBuffer window;
+    private boolean closed;
+
+    MappedEntryInputStream(FileChannel channel, long offset, long length) {
+        this(channel, offset, length, WINDOW_SIZE);
+    }
+
+    // windowSize only differs from WINDOW_SIZE in tests, which need entries that span windows
+    MappedEntryInputStream(FileChannel channel, long offset, long length, long windowSize) {
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.end = offset + length;
+        this.windowStart = offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        try {
+            return window.get() & 0xFF;
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int count = Math.min(len, window.remaining());
+        try {
+            window.get(b, off, count);
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long position = window == null ? windowStart : windowStart + window.position();
+        long skipped = Math.max(0, Math.min(n, end - position));
+        if (window != null && skipped <= window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            windowStart = position + skipped;
+            window = null;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        window = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    // a page of the window that is no longer backed by the file, because it was truncated while it was mapped, is
+    // reported by the JVM as an InternalError
+    private IOException truncated(InternalError e) {
+        return new IOException("The zip was truncated while its entry was read", e);
+    }
+
+    private boolean ensureWindow() throws IOException {
+        ensureOpen();
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (window != null) {
+            windowStart += window.capacity();
+        }
+        if (windowStart >= end) {
+            window = null;
+            return false;
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, end - windowStart));
+        return true;
+    }
+}
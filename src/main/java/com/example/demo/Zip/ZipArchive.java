@@ -0,0 +1,104 @@
+package com.example.demo.Zip;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+// a zip opened once for the whole processing of a message. the central directory is read and indexed when it is
+// opened, every entry lookup afterwards is in memory. stored (uncompressed) entries are read through a memory
+// mapping of the file instead of read() calls, only compressed entries go through an inflating stream.
+public class ZipArchive implements Closeable {
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int LOCAL_HEADER_NAME_LENGTH_OFFSET = 26;
+
+    private final String path;
+    private final FileChannel channel;
+    private final ZipFile zipFile;
+    private final List<ZipArchiveEntry> entries;
+
+    private ZipArchive(String path, FileChannel channel, ZipFile zipFile) {
+        this.path = path;
+        this.channel = channel;
+        this.zipFile = zipFile;
+        this.entries = Collections.unmodifiableList(Collections.list(zipFile.getEntries()));
+    }
+
+    public static ZipArchive open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        try {
+            // local headers are only read for the entries that are actually opened
+            ZipFile zipFile = ZipFile.builder()
+                    .setSeekableByteChannel(channel)
+                    .setIgnoreLocalFileHeader(true)
+                    .get();
+            return new ZipArchive(path, channel, zipFile);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String path() {
+        return path;
+    }
+
+    // all entries in central directory order
+    public List<ZipArchiveEntry> entries() {
+        return entries;
+    }
+
+    public List<ZipArchiveEntry> entries(Predicate<ZipArchiveEntry> filter) {
+        return entries.stream().filter(filter).toList();
+    }
+
+    // the entry with that name or null
+    public ZipArchiveEntry entry(String name) {
+        return zipFile.getEntry(name);
+    }
+
+    public InputStream open(ZipArchiveEntry entry) throws IOException {
+        if (isStored(entry)) {
+            return new MappedEntryInputStream(channel, dataOffset(entry), entry.getSize());
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    public boolean isStored(ZipArchiveEntry entry) {
+        return entry.getMethod() == ZipArchiveEntry.STORED && entry.getSize() >= 0;
+    }
+
+    // where the bytes of the entry start: behind its local header, whose name and extra field lengths can
+    // differ from the ones in the central directory.
+    private long dataOffset(ZipArchiveEntry entry) throws IOException {
+        ByteBuffer lengths = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        long position = entry.getLocalHeaderOffset() + LOCAL_HEADER_NAME_LENGTH_OFFSET;
+        while (lengths.hasRemaining()) {
+            if (channel.read(lengths, position + lengths.position()) < 0) {
+                throw new IOException("Truncated local header of " + entry.getName() + " in " + path);
+            }
+        }
+        int nameLength = Short.toUnsignedInt(lengths.getShort(0));
+        int extraLength = Short.toUnsignedInt(lengths.getShort(2));
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            zipFile.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
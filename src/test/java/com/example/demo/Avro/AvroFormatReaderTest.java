@@ -0,0 +1,159 @@
+package com.example.demo.Avro;
+
+import com.example.demo.Csv.CsvRowWriter;
+import com.example.demo.Csv.MalformedValueReport;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AvroFormatReaderTest {
+    private static final byte[] PREFIX = "{\"meta\":1}\n".getBytes(StandardCharsets.UTF_8);
+    private static final Schema SCHEMA = SchemaBuilder.record("row").fields()
+            .requiredLong("id")
+            .requiredString("note")
+            .requiredString("name")
+            .requiredFloat("score")
+            .requiredBoolean("active")
+            .requiredDouble("ratio")
+            .endRecord();
+    private static final int ROWS = 10;
+
+    private final KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256,
+            KeyGenerator.Encoding.HEX);
+    private final PipelineMetrics.ResourceMeters meters =
+            new PipelineMetrics(new SimpleMeterRegistry(), 1).resource(1, "AVRO");
+    // batches of 3 rows, so a file is converted in several batches
+    private final RowConversionEngine rowConversionEngine = new RowConversionEngine(2, 3, 0, false);
+    private final AvroFormatReader reader = new AvroFormatReader(keyGenerator, rowConversionEngine);
+    private final ResourceDescriptionService.ResourceSchema schema = schema();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void shutdown() {
+        rowConversionEngine.shutdown();
+    }
+
+    @Test
+    void recordsGiveTheRowsOfTheSameCsvLines() throws IOException {
+        List<GenericRecord> records = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            // the last id doesn't fit the int field and is sent as text, in both formats
+            long id = i == ROWS - 1 ? 1L << 40 : i;
+            GenericRecord record = new GenericData.Record(SCHEMA);
+            record.put("id", id);
+            record.put("note", "not in PROPS_DATA");
+            record.put("name", "name-" + i);
+            record.put("score", i / 3f);
+            record.put("active", i % 2 == 0);
+            record.put("ratio", i / 7.0);
+            records.add(record);
+            // the field the file doesn't have is the last one, missing at the end of the line
+            lines.add("name-" + i + ";" + id + ";" + i / 3f + ";" + (i % 2 == 0) + ";" + i / 7.0 + "~");
+        }
+        Path zip = zip("rows.avro", avro(records));
+
+        try (ZipArchive archive = ZipArchive.open(zip.toString())) {
+            List<ZipArchiveEntry> entries = reader.dataEntries(archive);
+            assertEquals(List.of("rows.avro"), entries.stream().map(ZipArchiveEntry::getName).toList());
+            List<String> expected = written(lines);
+            assertEquals(expected, read(archive, entries.get(0), 0));
+            // a resumed file skips the rows that were sent
+            assertEquals(expected.subList(7, ROWS), read(archive, entries.get(0), 7));
+        }
+    }
+
+    @Test
+    void aZipWithoutAvroIsRejected() throws IOException {
+        Path zip = zip("rows.csv", "a~".getBytes(StandardCharsets.UTF_8));
+        try (ZipArchive archive = ZipArchive.open(zip.toString())) {
+            assertThrows(IOException.class, () -> reader.dataEntries(archive));
+        }
+    }
+
+    private List<String> read(ZipArchive archive, ZipArchiveEntry entry, long skipRows) throws IOException {
+        List<ZipProcessor.OutputRecord> records = new ArrayList<>();
+        long rows = reader.read(archive, entry, schema, PREFIX, meters, skipRows, records::addAll);
+        assertEquals(records.size(), rows);
+        return records.stream().map(AvroFormatReaderTest::text).toList();
+    }
+
+    // the lines written one by one by the row writer of the resource, as if the rows came in a CSV file
+    private List<String> written(List<String> lines) {
+        CsvRowWriter.Session session = schema.rowWriter().newSession(schema.csvFormat(), PREFIX,
+                new MalformedValueReport(), keyGenerator, meters);
+        return lines.stream().map(line -> text(session.write(line))).toList();
+    }
+
+    private static String text(ZipProcessor.OutputRecord record) {
+        return record.key() + " " + new String(record.value(), StandardCharsets.UTF_8);
+    }
+
+    // in another order than the file, with a double read as a float and a field the file doesn't have
+    private static ResourceDescriptionService.ResourceSchema schema() {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("name", new PropsDataService.PropsData("string", null));
+        propsData.put("id", new PropsDataService.PropsData("int", null));
+        propsData.put("score", new PropsDataService.PropsData("float", null));
+        propsData.put("active", new PropsDataService.PropsData("boolean", null));
+        propsData.put("ratio", new PropsDataService.PropsData("float", null));
+        propsData.put("missing", new PropsDataService.PropsData("string", null));
+        return new ResourceDescriptionService.ResourceSchema(1, "v1", "resource", "AVRO",
+                new ResourceDescriptionService.CsvFormat(";", "~"), propsData);
+    }
+
+    private static byte[] avro(List<GenericRecord> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(SCHEMA))) {
+            // small blocks, so the file is read block by block
+            writer.setSyncInterval(64);
+            writer.create(SCHEMA, bytes);
+            for (GenericRecord record : records) {
+                writer.append(record);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private Path zip(String name, byte[] data) throws IOException {
+        Path zip = directory.resolve("data.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(data);
+            out.closeEntry();
+        }
+        return zip;
+    }
+}
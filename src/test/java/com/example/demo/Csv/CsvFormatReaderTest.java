@@ -0,0 +1,147 @@
+package com.example.demo.Csv;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvFormatReaderTest {
+    private static final byte[] PREFIX = "{\"meta\":1}\n".getBytes(StandardCharsets.UTF_8);
+    private static final String HEADER = "name;age;score;active~";
+
+    private final KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256,
+            KeyGenerator.Encoding.HEX);
+    private final PipelineMetrics.ResourceMeters meters =
+            new PipelineMetrics(new SimpleMeterRegistry(), 1).resource(1, "CSV");
+    // batches of 3 rows, so an entry is converted in several batches
+    private final RowConversionEngine rowConversionEngine = new RowConversionEngine(2, 3, 0, false);
+    private final CsvFormatReader reader = new CsvFormatReader(rowConversionEngine, keyGenerator,
+            ZipProcessor.EntryOrdering.PER_ENTRY);
+    private final ResourceDescriptionService.ResourceSchema schema = schema();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void shutdown() {
+        rowConversionEngine.shutdown();
+    }
+
+    @Test
+    void plainGzipAndZstdEntriesGiveTheSameRows() throws IOException {
+        List<String> lines = lines(10);
+        byte[] csv = (HEADER + "\n" + String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        Path zip = zip(Map.of("a.csv", csv, "b.csv.gz", gzip(csv), "c.csv.zst", zstd(csv),
+                "metadata.json", "{}".getBytes(StandardCharsets.UTF_8)));
+
+        try (ZipArchive archive = ZipArchive.open(zip.toString())) {
+            List<ZipArchiveEntry> entries = reader.dataEntries(archive);
+            assertEquals(List.of("a.csv", "b.csv.gz", "c.csv.zst"),
+                    entries.stream().map(ZipArchiveEntry::getName).sorted().toList());
+            List<String> expected = written(lines);
+            for (ZipArchiveEntry entry : entries) {
+                assertEquals(expected, read(archive, entry, 0), entry.getName());
+                // a resumed entry skips the rows that were sent
+                assertEquals(expected.subList(4, 10), read(archive, entry, 4), entry.getName());
+            }
+        }
+    }
+
+    @Test
+    void aZipWithoutCsvIsRejected() throws IOException {
+        Path zip = zip(Map.of("a.json", "[]".getBytes(StandardCharsets.UTF_8)));
+        try (ZipArchive archive = ZipArchive.open(zip.toString())) {
+            assertThrows(IOException.class, () -> reader.dataEntries(archive));
+        }
+    }
+
+    private List<String> read(ZipArchive archive, ZipArchiveEntry entry, long skipRows) throws IOException {
+        List<ZipProcessor.OutputRecord> records = new ArrayList<>();
+        long rows = reader.read(archive, entry, schema, PREFIX, meters, skipRows, records::addAll);
+        assertEquals(records.size(), rows);
+        return records.stream().map(CsvFormatReaderTest::text).toList();
+    }
+
+    // the lines written one by one by the row writer of the resource
+    private List<String> written(List<String> lines) {
+        CsvRowWriter.Session session = schema.rowWriter().newSession(schema.csvFormat(), PREFIX,
+                new MalformedValueReport(), keyGenerator, meters);
+        return lines.stream().map(line -> text(session.write(line))).toList();
+    }
+
+    private static String text(ZipProcessor.OutputRecord record) {
+        return record.key() + " " + new String(record.value(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> lines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("name-" + i + ";" + (20 + i) + ";" + (i / 4.0) + ";" + (i % 2 == 0) + "~");
+        }
+        return lines;
+    }
+
+    private static ResourceDescriptionService.ResourceSchema schema() {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("name", new PropsDataService.PropsData("string", null));
+        propsData.put("age", new PropsDataService.PropsData("int", null));
+        propsData.put("score", new PropsDataService.PropsData("float", null));
+        propsData.put("active", new PropsDataService.PropsData("boolean", null));
+        return new ResourceDescriptionService.ResourceSchema(1, "v1", "resource", "CSV",
+                new ResourceDescriptionService.CsvFormat(";", "~"), propsData);
+    }
+
+    private Path zip(Map<String, byte[]> entries) throws IOException {
+        Path zip = directory.resolve("data.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zstd(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdCompressorOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.demo.Csv;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.PropsDataService;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.ZipProcessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvRowWriterTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte[] PREFIX = "{\"meta\":1}\n".getBytes(StandardCharsets.UTF_8);
+    private static final ResourceDescriptionService.CsvFormat FORMAT =
+            new ResourceDescriptionService.CsvFormat(";", "~");
+
+    private final KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256,
+            KeyGenerator.Encoding.HEX);
+    private final PipelineMetrics.ResourceMeters meters =
+            new PipelineMetrics(new SimpleMeterRegistry(), 1).resource(1, "CSV");
+    private final MalformedValueReport malformedValues = new MalformedValueReport();
+
+    @Test
+    void keysAndValuesMatchTheOldConversion() throws Exception {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("name", new PropsDataService.PropsData("string", null));
+        propsData.put("age", new PropsDataService.PropsData("int", null));
+        propsData.put("score", new PropsDataService.PropsData("float", null));
+        propsData.put("active", new PropsDataService.PropsData("boolean", null));
+        propsData.put("city", new PropsDataService.PropsData("string", null));
+        CsvRowWriter.Session session = session(propsData);
+        List<String> fieldNames = List.copyOf(propsData.keySet());
+
+        Random random = new Random(3);
+        List<String> texts = List.of("", "a", "Zürich", "x y", "12", "true", "😀");
+        List<String> ints = List.of("0", "-7", "123456", "2147483647", "", "12a", "1.5", "99999999999");
+        List<String> floats = List.of("0", "-0", "1.5", "3e4", "1e-7", "123456789.5", "3.4e38", "", "x", "NaN");
+        List<String> booleans = List.of("true", "FALSE", "yes", "");
+        for (int i = 0; i < 5000; i++) {
+            String[] values = {pick(random, texts), pick(random, ints), pick(random, floats), pick(random, booleans),
+                    pick(random, texts)};
+            // trailing columns may be missing
+            int columns = 1 + random.nextInt(values.length);
+            String line = String.join(";", Arrays.copyOf(values, columns)) + "~";
+
+            ZipProcessor.OutputRecord record = session.write(line);
+            Map<String, Object> expected = oldRow(line, fieldNames, propsData);
+            assertEquals(oldKey(expected), record.key(), line);
+            Map<String, Object> written = value(record);
+            assertEquals(fieldNames, List.copyOf(written.keySet()), line);
+            assertEquals(OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsString(expected), Map.class), written,
+                    line);
+        }
+    }
+
+    @Test
+    void trimRemovesWhitespaceBeforeTyping() throws Exception {
+        CsvRowWriter.Session session = session(Map.of("n", new PropsDataService.PropsData("int", "TRIM")));
+        ZipProcessor.OutputRecord record = session.write("  42 ~");
+        assertEquals(42, value(record).get("n"));
+        assertEquals(DigestUtils.sha256Hex("42"), record.key());
+        assertEquals(0, malformedValues.count());
+    }
+
+    @Test
+    void emptyAsNullWritesNull() throws Exception {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("a", new PropsDataService.PropsData("int", "EMPTY_AS_NULL"));
+        propsData.put("b", new PropsDataService.PropsData("string", "trim, empty_as_null"));
+        propsData.put("c", new PropsDataService.PropsData("string", null));
+        CsvRowWriter.Session session = session(propsData);
+        ZipProcessor.OutputRecord record = session.write(";   ;~");
+        Map<String, Object> value = value(record);
+        assertTrue(value.containsKey("a"));
+        assertNull(value.get("a"));
+        assertNull(value.get("b"));
+        assertEquals("", value.get("c"));
+        assertEquals(DigestUtils.sha256Hex("nullnull"), record.key());
+        // an empty value is not malformed when it becomes null
+        assertEquals(0, malformedValues.count());
+    }
+
+    @Test
+    void jsonValuesAreEmbedded() throws Exception {
+        CsvRowWriter.Session session = session(Map.of("j", new PropsDataService.PropsData("string", "JSON")));
+        ZipProcessor.OutputRecord record = session.write("{\"a\": [1, 2.5, \"x\"]}~");
+        assertEquals(Map.of("a", List.of(1, 2.5, "x")), value(record).get("j"));
+        // the key hashes the text of the value as it was in the file
+        assertEquals(DigestUtils.sha256Hex("{\"a\": [1, 2.5, \"x\"]}"), record.key());
+        assertEquals(0, malformedValues.count());
+    }
+
+    @Test
+    void malformedJsonIsWrittenAsText() throws Exception {
+        CsvRowWriter.Session session = session(Map.of("j", new PropsDataService.PropsData("string", "JSON")));
+        for (String malformed : List.of("{\"a\":", "[1] 2", "nope")) {
+            ZipProcessor.OutputRecord record = session.write(malformed + "~");
+            assertEquals(malformed, value(record).get("j"));
+            assertEquals(DigestUtils.sha256Hex(malformed), record.key());
+        }
+        assertEquals(3, malformedValues.count());
+        assertEquals("j (string): '{\"a\":'", malformedValues.firstSample());
+    }
+
+    @Test
+    void malformedNumbersAreReportedOnce() throws Exception {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("i", new PropsDataService.PropsData("integer", null));
+        propsData.put("f", new PropsDataService.PropsData("float", "UNKNOWN"));
+        CsvRowWriter.Session session = session(propsData);
+        Map<String, Object> value = value(session.write("1O;2,5~"));
+        assertEquals("1O", value.get("i"));
+        assertEquals("2,5", value.get("f"));
+        assertEquals(2, malformedValues.count());
+        assertEquals("i (integer): '1O'", malformedValues.firstSample());
+    }
+
+    @Test
+    void quotedFieldsMayHoldTheDelimiter() throws Exception {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("a", new PropsDataService.PropsData("string", null));
+        propsData.put("b", new PropsDataService.PropsData("int", null));
+        Map<String, Object> value = value(session(propsData).write("\"x;\"\"y\"\"\";5~"));
+        assertEquals("x;\"y\"", value.get("a"));
+        assertEquals(5, value.get("b"));
+    }
+
+    @Test
+    void splitRowsKeepNulls() throws Exception {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("a", new PropsDataService.PropsData("int", null));
+        propsData.put("b", new PropsDataService.PropsData("string", null));
+        ZipProcessor.OutputRecord record = session(propsData).write(new Object[]{"7", null});
+        Map<String, Object> value = value(record);
+        assertEquals(7, value.get("a"));
+        assertNull(value.get("b"));
+        assertEquals(DigestUtils.sha256Hex("7null"), record.key());
+    }
+
+    @Test
+    void typedValuesGiveTheRowsOfTheirText() {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("i", new PropsDataService.PropsData("int", null));
+        propsData.put("f", new PropsDataService.PropsData("float", "EMPTY_AS_NULL"));
+        propsData.put("b", new PropsDataService.PropsData("boolean", null));
+        propsData.put("t", new PropsDataService.PropsData("string", "TRIM"));
+        propsData.put("j", new PropsDataService.PropsData("string", "JSON"));
+        CsvRowWriter rowWriter = new CsvRowWriter(List.copyOf(propsData.keySet()), propsData);
+        MalformedValueReport typedMalformed = new MalformedValueReport();
+        MalformedValueReport textMalformed = new MalformedValueReport();
+        CsvRowWriter.Session typed = rowWriter.newSession(FORMAT, PREFIX, typedMalformed, keyGenerator, meters);
+        CsvRowWriter.Session text = rowWriter.newSession(FORMAT, PREFIX, textMalformed, keyGenerator, meters);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            Object[] values = new Object[5];
+            Arrays.setAll(values, field -> randomValue(random));
+            Object[] texts = Arrays.stream(values).map(value -> value == null ? null : value.toString()).toArray();
+            ZipProcessor.OutputRecord expected = text.write(texts);
+            ZipProcessor.OutputRecord record = typed.write(values);
+            String row = Arrays.toString(values);
+            assertEquals(expected.key(), record.key(), row);
+            assertEquals(new String(expected.value(), StandardCharsets.UTF_8),
+                    new String(record.value(), StandardCharsets.UTF_8), row);
+        }
+        assertEquals(textMalformed.count(), typedMalformed.count());
+    }
+
+    // an Avro value of any type, in any field
+    private static Object randomValue(Random random) {
+        return switch (random.nextInt(10)) {
+            case 0 -> null;
+            case 1 -> random.nextInt();
+            case 2 -> (long) random.nextInt(2000) - 1000;
+            case 3 -> random.nextLong();
+            case 4 -> Float.intBitsToFloat(random.nextInt());
+            case 5 -> pick(random, List.of(0f, -0f, 1.5f, 1e19f, Float.MIN_VALUE, Float.NaN, Float.NEGATIVE_INFINITY));
+            case 6 -> Double.longBitsToDouble(random.nextLong());
+            case 7 -> random.nextBoolean();
+            case 8 -> (short) random.nextInt();
+            default -> pick(random, List.of("", " 12 ", "true", "x", "{\"a\": [1]}", "1.5"));
+        };
+    }
+
+    private CsvRowWriter.Session session(Map<String, PropsDataService.PropsData> propsData) {
+        CsvRowWriter rowWriter = new CsvRowWriter(List.copyOf(propsData.keySet()), propsData);
+        return rowWriter.newSession(FORMAT, PREFIX, malformedValues, keyGenerator, meters);
+    }
+
+    private static Map<String, Object> value(ZipProcessor.OutputRecord record) throws Exception {
+        byte[] value = record.value();
+        assertEquals(new String(PREFIX, StandardCharsets.UTF_8),
+                new String(value, 0, PREFIX.length, StandardCharsets.UTF_8));
+        return OBJECT_MAPPER.readValue(value, PREFIX.length, value.length - PREFIX.length,
+                new TypeReference<LinkedHashMap<String, Object>>() {
+                });
+    }
+
+    private static <T> T pick(Random random, List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    // the row the way lines were converted before the row writer: split, padded with nulls and cast value by value
+    private static Map<String, Object> oldRow(String line, List<String> fieldNames,
+                                              Map<String, PropsDataService.PropsData> propsData) {
+        String[] values = line.split(Pattern.quote(FORMAT.delimiter()), -1);
+        values[values.length - 1] = values[values.length - 1].replace(FORMAT.endLine(), "");
+        if (values.length < fieldNames.size()) {
+            values = Arrays.copyOf(values, fieldNames.size());
+        }
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            row.put(fieldNames.get(i), castValue(values[i], propsData.get(fieldNames.get(i))));
+        }
+        return row;
+    }
+
+    private static Object castValue(String value, PropsDataService.PropsData meta) {
+        if (meta == null || value == null) {
+            return value;
+        }
+        try {
+            return switch (meta.type()) {
+                case "float" -> Float.parseFloat(value);
+                case "boolean" -> Boolean.parseBoolean(value);
+                case "int", "integer" -> Integer.parseInt(value);
+                default -> value;
+            };
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    // the key the way it was computed before: the row through JSON and back, its values in field name order
+    @SuppressWarnings("unchecked")
+    private static String oldKey(Map<String, Object> row) throws Exception {
+        Map<String, Object> parsed = OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsString(row), Map.class);
+        return DigestUtils.sha256Hex(new TreeMap<>(parsed).values().stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining()));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.demo.Csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTokenizerTest {
+
+    @Test
+    void splitsOnTheDelimiter() {
+        CsvTokenizer tokenizer = new CsvTokenizer(";", null);
+        assertEquals(List.of("a", "", "c", ""), fields(tokenizer, "a;;c;"));
+    }
+
+    @Test
+    void splitsOnADelimiterOfSeveralCharacters() {
+        CsvTokenizer tokenizer = new CsvTokenizer("||", null);
+        assertEquals(List.of("a|b", "c", ""), fields(tokenizer, "a|b||c||"));
+    }
+
+    @Test
+    void defaultsToComma() {
+        assertEquals(List.of("a", "b"), fields(new CsvTokenizer("", null), "a,b"));
+    }
+
+    @Test
+    void unescapesQuotedFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",", null);
+        assertEquals(List.of("a,b", "say \"hi\"", "", "x"), fields(tokenizer, "\"a,b\",\"say \"\"hi\"\"\",\"\",x"));
+    }
+
+    @Test
+    void keepsWhatFollowsTheClosingQuote() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",", null);
+        assertEquals(List.of("ab c", "d"), fields(tokenizer, "\"ab\" c,d"));
+    }
+
+    @Test
+    void dropsTheEndLineSuffix() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",", "~");
+        assertEquals(List.of("a", "b"), fields(tokenizer, "a,b~"));
+        // only a suffix is dropped
+        assertEquals(List.of("a~", "b"), fields(tokenizer, "a~,b"));
+        // an empty line is one empty field
+        assertEquals(List.of(""), fields(tokenizer, "~"));
+    }
+
+    @Test
+    void growsItsBuffersForLongLines() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",", null);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("field-" + i + "-" + "x".repeat(i));
+        }
+        assertEquals(expected, fields(tokenizer, String.join(",", expected)));
+        // a shorter line afterwards only sees its own fields
+        assertEquals(List.of("a", "b"), fields(tokenizer, "a,b"));
+    }
+
+    @Test
+    void loadsSplitFieldsAndKeepsNulls() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",", null);
+        assertEquals(3, tokenizer.load(new CharSequence[]{"a", null, ""}));
+        assertEquals("a", tokenizer.fieldString(0));
+        assertTrue(tokenizer.isNull(1));
+        assertFalse(tokenizer.isNull(2));
+        assertEquals("", tokenizer.fieldString(2));
+    }
+
+    private static List<String> fields(CsvTokenizer tokenizer, String line) {
+        int count = tokenizer.tokenize(line);
+        assertEquals(count, tokenizer.fieldCount());
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            assertFalse(tokenizer.isNull(i));
+            fields.add(tokenizer.fieldString(i));
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.Csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FieldParserTest {
+    private final FieldParser parser = new FieldParser();
+
+    @Test
+    void parsesIntsLikeIntegerParseInt() {
+        for (String value : List.of("0", "-0", "+7", "42", "-2147483648", "2147483647", "007")) {
+            assertTrue(parseInt(value), value);
+            assertEquals(Integer.parseInt(value), parser.intValue(), value);
+        }
+        for (String value : List.of("", "-", "+", "2147483648", "-2147483649", "1.0", " 1", "1 ", "1e3", "x")) {
+            assertFalse(parseInt(value), value);
+        }
+    }
+
+    @Test
+    void parsesFloatsLikeFloatParseFloat() {
+        List<String> values = List.of("0", "-0", "0.0", "1", "-12.5", "3e4", "3E-4", "+1.5e+2", ".5", "5.", " 2.5 ",
+                "16777216", "16777217", "123456789.123", "1e10", "1e11", "1e-10", "1e-11", "3.4028235e38", "1e39",
+                "1e-46", "0.1", "0.30000001", "NaN", "-Infinity", "0x1p3", "1.5f", "2d");
+        for (String value : values) {
+            assertTrue(parseFloat(value), value);
+            assertSameFloat(Float.parseFloat(value), parser.floatValue(), value);
+        }
+    }
+
+    @Test
+    void fastPathMatchesFloatParseFloat() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            String value = randomDecimal(random);
+            assertTrue(parseFloat(value), value);
+            assertSameFloat(Float.parseFloat(value), parser.floatValue(), value);
+        }
+    }
+
+    @Test
+    void rejectsMalformedFloats() {
+        for (String value : List.of("", " ", "-", ".", "1.2.3", "1e", "1e+", "abc", "1,5", "--1", "1x", "Inf")) {
+            assertFalse(parseFloat(value), value);
+        }
+    }
+
+    @Test
+    void parsesBooleansLikeBooleanParseBoolean() {
+        assertTrue(parseBoolean("TRUE"));
+        assertTrue(parser.booleanValue());
+        assertTrue(parseBoolean("False"));
+        assertFalse(parser.booleanValue());
+        // malformed, but still false the way Boolean.parseBoolean has it
+        assertFalse(parseBoolean("yes"));
+        assertFalse(parser.booleanValue());
+    }
+
+    private static String randomDecimal(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> Integer.toString(random.nextInt());
+            case 1 -> String.format(Locale.ROOT, "%." + random.nextInt(8) + "f",
+                    (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12)));
+            case 2 -> Float.toString((random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(20) - 10));
+            default -> (random.nextInt(2_000_000) - 1_000_000) + "e" + (random.nextInt(30) - 15);
+        };
+    }
+
+    private static void assertSameFloat(float expected, float actual, String value) {
+        assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual), value);
+    }
+
+    private boolean parseInt(String value) {
+        return parser.parseInt(value.toCharArray(), 0, value.length());
+    }
+
+    private boolean parseFloat(String value) {
+        // the value sits in the middle of a larger buffer, like a field of a line
+        char[] buffer = ("x," + value + ",y").toCharArray();
+        return parser.parseFloat(buffer, 2, 2 + value.length());
+    }
+
+    private boolean parseBoolean(String value) {
+        return parser.parseBoolean(value.toCharArray(), 0, value.length());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.Formats;
+
+import com.example.demo.Avro.AvroFormatReader;
+import com.example.demo.Csv.CsvFormatReader;
+import com.example.demo.Json.JsonFormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ResourceDescriptionService;
+import com.example.demo.Services.RowConversionEngine;
+import com.example.demo.Services.ZipProcessor;
+import com.example.demo.Zip.ZipArchive;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FormatReadersTest {
+    private final KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256,
+            KeyGenerator.Encoding.HEX);
+    private final RowConversionEngine rowConversionEngine = new RowConversionEngine(1, 10, 0, false);
+    private final CsvFormatReader csv = new CsvFormatReader(rowConversionEngine, keyGenerator,
+            ZipProcessor.EntryOrdering.PER_ENTRY);
+    private final JsonFormatReader json = new JsonFormatReader(keyGenerator, rowConversionEngine);
+    private final AvroFormatReader avro = new AvroFormatReader(keyGenerator, rowConversionEngine);
+
+    @AfterEach
+    void shutdown() {
+        rowConversionEngine.shutdown();
+    }
+
+    @Test
+    void theReaderIsPickedByTheFileType() {
+        FormatReaders readers = new FormatReaders(List.of(json, csv, avro));
+        assertInstanceOf(CsvFormatReader.class, readers.forFileType("CSV"));
+        assertInstanceOf(CsvFormatReader.class, readers.forFileType("CSV_GZIP"));
+        assertInstanceOf(CsvFormatReader.class, readers.forFileType("CSV_ZSTD"));
+        assertInstanceOf(JsonFormatReader.class, readers.forFileType("JSON"));
+        assertInstanceOf(AvroFormatReader.class, readers.forFileType("AVRO"));
+        assertNull(readers.forFileType("PARQUET"));
+        assertNull(readers.forFileType("csv"));
+        assertNull(readers.forFileType(null));
+    }
+
+    @Test
+    void twoReadersOfTheSameFileTypeFailTheStartup() {
+        FormatReader otherCsv = new FormatReader() {
+            @Override
+            public Set<String> fileTypes() {
+                return Set.of("CSV_GZIP");
+            }
+
+            @Override
+            public List<ZipArchiveEntry> dataEntries(ZipArchive archive) {
+                return List.of();
+            }
+
+            @Override
+            public long read(ZipArchive archive, ZipArchiveEntry entry,
+                             ResourceDescriptionService.ResourceSchema schema, byte[] valuePrefix,
+                             PipelineMetrics.ResourceMeters meters, long skipRows, ZipProcessor.ChunkSink sink) {
+                return 0;
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> new FormatReaders(List.of(csv, otherCsv)));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.Json;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.KeyGenerator;
+import com.example.demo.Services.ZipProcessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonEntryReaderTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String PREFIX = "{\"meta\":1}\n";
+
+    private final KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256,
+            KeyGenerator.Encoding.HEX);
+    private final PipelineMetrics.ResourceMeters meters =
+            new PipelineMetrics(new SimpleMeterRegistry(), 1).resource(1, "JSON");
+
+    @Test
+    void numbersAreKeyedAndWrittenLikeTheTreePath() throws Exception {
+        assertSameAsTreePath("[{\"zero\": -0, \"price\": 1.50, \"exp\": 1e3, \"negativeZero\": -0.0, \"small\": 0.1},"
+                + " {\"long\": 9223372036854775807, \"big\": 123456789012345678901234567890, \"int\": -42}]");
+    }
+
+    @Test
+    void nestedValuesAreKeyedLikeTheTreePath() throws Exception {
+        assertSameAsTreePath("[{\"b\": {\"y\": [1, 2.50, -0, \"s\"], \"x\": null, \"w\": {}}, \"a\": [],"
+                + " \"c\": [{\"k\": true}, [false, null]]}]");
+    }
+
+    @Test
+    void scalarsAreKeyedLikeTheTreePath() throws Exception {
+        assertSameAsTreePath("[{\"s\": \"text \\\"quoted\\\" \\u00e9\", \"t\": true, \"f\": false, \"n\": null,"
+                + " \"e\": \"\"}, {}]");
+    }
+
+    @Test
+    void aDuplicateFieldKeepsTheLastValueInThePlaceOfTheFirst() throws Exception {
+        assertSameAsTreePath("[{\"a\": 1, \"b\": 2, \"a\": {\"x\": 3}}, {\"c\": 1, \"c\": 1.50}]");
+    }
+
+    @Test
+    void aSingleObjectIsOneRow() throws Exception {
+        assertSameAsTreePath("{\"b\": 1, \"a\": [1.0, 2]}");
+    }
+
+    @Test
+    void skippedElementsAreNotSent() throws Exception {
+        String entry = "[{\"a\": 1}, {\"a\": [2, {\"b\": 3}]}, {\"a\": 4}, {\"a\": 5}]";
+        List<ZipProcessor.OutputRecord> records = read(entry, 2, 1);
+        List<ZipProcessor.OutputRecord> expected = treePath(entry);
+        assertEquals(2, records.size());
+        assertSame(expected.subList(2, 4), records);
+    }
+
+    private void assertSameAsTreePath(String entry) throws Exception {
+        // chunks of one and of several elements
+        assertSame(treePath(entry), read(entry, 0, 1));
+        assertSame(treePath(entry), read(entry, 0, 100));
+    }
+
+    private static void assertSame(List<ZipProcessor.OutputRecord> expected, List<ZipProcessor.OutputRecord> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).key(), actual.get(i).key(), "key of element " + i);
+            assertEquals(new String(expected.get(i).value(), StandardCharsets.UTF_8),
+                    new String(actual.get(i).value(), StandardCharsets.UTF_8), "value of element " + i);
+        }
+    }
+
+    private List<ZipProcessor.OutputRecord> read(String entry, long skipRows, int chunkSize) throws Exception {
+        JsonEntryReader reader = new JsonEntryReader(OBJECT_MAPPER, keyGenerator, meters,
+                PREFIX.getBytes(StandardCharsets.UTF_8), chunkSize);
+        List<ZipProcessor.OutputRecord> records = new ArrayList<>();
+        long rows = reader.read(new ByteArrayInputStream(entry.getBytes(StandardCharsets.UTF_8)), skipRows,
+                records::addAll);
+        assertEquals(records.size(), rows);
+        return records;
+    }
+
+    // the path before the streaming reader: the tree of the whole entry, each element written as a string, and the
+    // key hashed from that string read back as a Map with its values in field name order
+    @SuppressWarnings("unchecked")
+    private static List<ZipProcessor.OutputRecord> treePath(String entry) throws Exception {
+        JsonNode node = OBJECT_MAPPER.readTree(entry);
+        List<String> jsons = new ArrayList<>();
+        if (node.isArray()) {
+            for (JsonNode element : node) {
+                jsons.add(OBJECT_MAPPER.writeValueAsString(element));
+            }
+        } else {
+            jsons.add(OBJECT_MAPPER.writeValueAsString(node));
+        }
+        List<ZipProcessor.OutputRecord> records = new ArrayList<>();
+        for (String json : jsons) {
+            Map<String, Object> map = OBJECT_MAPPER.readValue(json, Map.class);
+            String concatenatedValues = new TreeMap<>(map).values().stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining());
+            records.add(new ZipProcessor.OutputRecord(DigestUtils.sha256Hex(concatenatedValues),
+                    (PREFIX + json).getBytes(StandardCharsets.UTF_8)));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.Metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineMetricsTest {
+
+    @Test
+    void theMetersOfAResourceAreOnlyTaggedByFileType() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry, 1);
+        for (int resourceId = 1; resourceId <= 50; resourceId++) {
+            use(metrics, resourceId);
+        }
+
+        assertTrue(registry.getMeters().stream().allMatch(meter -> meter.getId().getTag("resourceId") == null));
+        assertEquals(1, registry.find("pipeline.rows").counters().size());
+        assertEquals(50, registry.get("pipeline.rows").tag("fileType", "CSV").counter().count());
+    }
+
+    @Test
+    void theResourceIdTagIsAddedWhenEnabled() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry, 1, true);
+        use(metrics, 1);
+        use(metrics, 2);
+
+        assertEquals(2, registry.find("pipeline.rows").counters().size());
+        assertEquals(1, registry.get("pipeline.rows").tags("resourceId", "2", "fileType", "CSV").counter().count());
+        assertEquals(2, registry.find("pipeline.resource.lookup").timers().size());
+        // the histogram of the zips never has it
+        assertTrue(registry.find("pipeline.zip").meters().stream().map(Meter::getId)
+                .allMatch(id -> id.getTag("resourceId") == null));
+    }
+
+    private static void use(PipelineMetrics metrics, int resourceId) {
+        metrics.resourceLookedUp(metrics.start(), resourceId);
+        PipelineMetrics.ResourceMeters meters = metrics.resource(resourceId, "CSV");
+        meters.rowsSent(1, 10);
+        meters.zipDone(metrics.start(), 1, true);
+    }
+}
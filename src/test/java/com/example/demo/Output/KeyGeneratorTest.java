@@ -0,0 +1,101 @@
+package com.example.demo.Output;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeyGeneratorTest {
+
+    @Test
+    void sha256HexIsTheKeyOfDigestUtils() {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        for (String input : inputs()) {
+            assertEquals(DigestUtils.sha256Hex(input), keyGenerator.key(input), input);
+        }
+    }
+
+    @Test
+    void base64IsUrlSafeWithoutPadding() throws Exception {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.BASE64);
+        for (String input : inputs()) {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(hash), keyGenerator.key(input), input);
+        }
+    }
+
+    @Test
+    void murmurKeysAreTheBigEndianHash() {
+        KeyGenerator hex = new KeyGenerator(KeyGenerator.Algorithm.MURMUR3_128, KeyGenerator.Encoding.HEX);
+        KeyGenerator base64 = new KeyGenerator(KeyGenerator.Algorithm.MURMUR3_128, KeyGenerator.Encoding.BASE64);
+        for (String input : inputs()) {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            long[] murmur = MurmurHash3.hash128x64(bytes, 0, bytes.length, 0);
+            byte[] hash = ByteBuffer.allocate(16).putLong(murmur[0]).putLong(murmur[1]).array();
+            assertEquals(HexFormat.of().formatHex(hash), hex.key(input), input);
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(hash), base64.key(input), input);
+        }
+    }
+
+    @Test
+    void appendsLikeTheConcatenatedString() {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        char[] buffer = "x😀y\uD83D".toCharArray();
+        String key = keyGenerator.hasher()
+                .append("a")
+                .append(-42)
+                .append(Integer.MIN_VALUE)
+                .append(0)
+                .append(true)
+                .append(buffer, 0, buffer.length)
+                .finish();
+        assertEquals(DigestUtils.sha256Hex("a-42" + Integer.MIN_VALUE + "0true" + new String(buffer)), key);
+    }
+
+    @Test
+    void aSurrogatePairSplitByTheEndOfARangeIsTwoUnpairedSurrogates() {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        char[] buffer = "a😀".toCharArray();
+        String key = keyGenerator.hasher().append(buffer, 0, 2).append(buffer, 2, 3).finish();
+        assertEquals(DigestUtils.sha256Hex("a??"), key);
+    }
+
+    @Test
+    void theHasherStartsEmpty() {
+        KeyGenerator keyGenerator = new KeyGenerator(KeyGenerator.Algorithm.SHA_256, KeyGenerator.Encoding.HEX);
+        keyGenerator.hasher().append("left over");
+        assertEquals(DigestUtils.sha256Hex("b"), keyGenerator.hasher().append("b").finish());
+    }
+
+    // ASCII, two and three byte characters, surrogate pairs, unpaired surrogates and inputs longer than the
+    // initial buffer of the hasher
+    private static List<String> inputs() {
+        List<String> inputs = new ArrayList<>(List.of("", "a", "héllo wörld", "€100", "日本語", "😀",
+                "a\uD83Db", "\uDE00a", "x\uD83D", "a".repeat(1000)));
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(300);
+            for (int j = 0; j < length; j++) {
+                input.append(switch (random.nextInt(4)) {
+                    case 0 -> (char) (' ' + random.nextInt(95));
+                    case 1 -> (char) (0x80 + random.nextInt(0x780));
+                    case 2 -> (char) random.nextInt(0x10000);
+                    default -> new String(Character.toChars(0x10000 + random.nextInt(0x100000)));
+                });
+            }
+            inputs.add(input.toString());
+        }
+        return inputs;
+    }
+}
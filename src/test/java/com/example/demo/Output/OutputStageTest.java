@@ -0,0 +1,173 @@
+package com.example.demo.Output;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutputStageTest {
+    private static final String TOPIC = "output_results";
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, byte[]> kafkaTemplate = mock(KafkaTemplate.class);
+    // the futures of the sends in order, completed by the tests as the brokers would
+    private final List<CompletableFuture<SendResult<String, byte[]>>> sends = new CopyOnWriteArrayList<>();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdown() {
+        sender.shutdownNow();
+    }
+
+    @Test
+    void aSenderWaitsAtTheInFlightLimit() throws Exception {
+        OutputStage outputStage = outputStage(2, Duration.ofSeconds(5));
+        OutputStage.Delivery delivery = outputStage.newDelivery("a.zip");
+        delivery.send("k1", new byte[3]);
+        delivery.send("k2", new byte[3]);
+
+        Future<?> third = sender.submit(() -> {
+            delivery.send("k3", new byte[4]);
+            return null;
+        });
+        Thread.sleep(100);
+        assertFalse(third.isDone());
+        assertEquals(2, sends.size());
+
+        // an acknowledgement frees the slot
+        sends.get(0).complete(null);
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(3, sends.size());
+        sends.get(1).complete(null);
+        sends.get(2).complete(null);
+
+        OutputStage.DeliveryResult result = delivery.close(Duration.ofSeconds(5));
+        assertTrue(result.succeeded());
+        assertEquals(3, result.records());
+        assertEquals(10, result.bytes());
+        assertNull(result.firstError());
+        assertEquals(3, outputStage.sentRecords());
+        assertEquals(0, outputStage.failedRecords());
+        assertEquals(3, registry.get("pipeline.produce").tag("topic", TOPIC).timer().count());
+    }
+
+    @Test
+    void aFailedSendFailsTheZip() throws Exception {
+        OutputStage outputStage = outputStage(10, Duration.ofSeconds(5));
+        OutputStage.Delivery delivery = outputStage.newDelivery("a.zip");
+        delivery.send("k1", new byte[1]);
+        delivery.send("k2", new byte[1]);
+        KafkaException error = new KafkaException("record too large");
+        sends.get(0).complete(null);
+        sends.get(1).completeExceptionally(error);
+
+        assertFalse(delivery.finish());
+        assertEquals(1, outputStage.sentRecords());
+        assertEquals(1, outputStage.failedRecords());
+        assertEquals(1.0, registry.get("pipeline.produce.failures").tag("topic", TOPIC).counter().count());
+
+        // the next zip is not affected
+        OutputStage.Delivery next = outputStage.newDelivery("b.zip");
+        next.send("k3", new byte[1]);
+        sends.get(2).complete(null);
+        assertTrue(next.finish());
+        assertEquals(2, outputStage.sentRecords());
+    }
+
+    @Test
+    void aSendThatThrowsCountsAsFailedAndFreesItsSlot() throws Exception {
+        OutputStage outputStage = outputStage(1, Duration.ofSeconds(5));
+        KafkaException error = new KafkaException("producer closed");
+        when(kafkaTemplate.send(eq(TOPIC), eq("broken"), any())).thenThrow(error);
+        OutputStage.Delivery delivery = outputStage.newDelivery("a.zip");
+        delivery.send("broken", new byte[1]);
+        // would wait forever if the slot of the failed send was kept
+        assertTrue(sender.submit(() -> {
+            delivery.send("k2", new byte[1]);
+            return true;
+        }).get(5, TimeUnit.SECONDS));
+        sends.get(0).complete(null);
+
+        OutputStage.DeliveryResult result = delivery.close(Duration.ofSeconds(5));
+        assertFalse(result.succeeded());
+        assertEquals(2, result.records());
+        assertEquals(1, result.failed());
+        assertSame(error, result.firstError());
+    }
+
+    @Test
+    void finishGivesUpAfterTheDeliveryTimeout() throws Exception {
+        OutputStage outputStage = outputStage(2, Duration.ofMillis(100));
+        OutputStage.Delivery delivery = outputStage.newDelivery("a.zip");
+        delivery.send("k1", new byte[1]);
+        long started = System.nanoTime();
+        assertFalse(delivery.finish());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        OutputStage.Delivery other = outputStage.newDelivery("b.zip");
+        other.send("k2", new byte[1]);
+        OutputStage.DeliveryResult result = other.close(Duration.ofMillis(10));
+        assertInstanceOf(TimeoutException.class, result.firstError());
+        assertEquals(0, result.failed());
+
+        // the late acknowledgements still free the slots for the next zip
+        sends.get(0).complete(null);
+        sends.get(1).complete(null);
+        OutputStage.Delivery next = outputStage.newDelivery("c.zip");
+        next.send("k3", new byte[1]);
+        next.send("k4", new byte[1]);
+        sends.get(2).complete(null);
+        sends.get(3).complete(null);
+        assertTrue(next.finish());
+        assertEquals(4, outputStage.sentRecords());
+    }
+
+    @Test
+    void anInterruptedSenderStopsWaiting() throws Exception {
+        OutputStage outputStage = outputStage(1, Duration.ofSeconds(5));
+        OutputStage.Delivery delivery = outputStage.newDelivery("a.zip");
+        delivery.send("k1", new byte[1]);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedIOException.class, () -> delivery.send("k2", new byte[1]));
+        assertTrue(Thread.interrupted());
+        assertEquals(1, sends.size());
+    }
+
+    private OutputStage outputStage(int maxInFlight, Duration deliveryTimeout) {
+        when(kafkaTemplate.send(eq(TOPIC), anyString(), any())).thenAnswer(invocation -> {
+            CompletableFuture<SendResult<String, byte[]>> future = new CompletableFuture<>();
+            sends.add(future);
+            return future;
+        });
+        return new OutputStage(kafkaTemplate, TOPIC, maxInFlight, deliveryTimeout, new PipelineMetrics(registry, 1));
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.demo.Services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceDescriptionServiceTest {
+    private final Database database = new Database();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void theFirstRefreshLoadsEverythingInOneScan() {
+        for (int id = 1; id <= 3; id++) {
+            database.putResource(id, "resource-" + id);
+        }
+        ResourceDescriptionService service = service("");
+
+        assertEquals(List.of("versions", "all"), database.loads);
+        ResourceDescriptionService.ResourceSchema schema = service.getSchema(2);
+        assertEquals("resource-2", schema.name());
+        assertEquals(new ResourceDescriptionService.CsvFormat(";", "~"), schema.csvFormat());
+        assertEquals(List.of("name", "age"), schema.fieldNames());
+        assertNotNull(schema.rowWriter());
+        // answered from the cache
+        assertEquals(List.of("versions", "all"), database.loads);
+    }
+
+    @Test
+    void aRefreshOnlyLoadsTheResourcesThatChanged() {
+        for (int id = 1; id <= 6; id++) {
+            database.putResource(id, "resource-" + id);
+        }
+        ResourceDescriptionService service = service("");
+        ResourceDescriptionService.ResourceSchema renamedBefore = service.getSchema(2);
+        ResourceDescriptionService.ResourceSchema retypedBefore = service.getSchema(3);
+        database.loads.clear();
+
+        service.refreshCache();
+        assertEquals(List.of("versions"), database.loads);
+
+        database.putResource(2, "renamed");
+        database.putFields(3, Map.of("name", "string", "age", "float"));
+        database.removeResource(4);
+        database.loads.clear();
+        service.refreshCache();
+
+        assertEquals(List.of("versions", "ids [2, 3]"), database.loads);
+        ResourceDescriptionService.ResourceSchema renamed = service.getSchema(2);
+        assertEquals("renamed", renamed.name());
+        // the fields of a renamed resource didn't change, neither does its row writer
+        assertSame(renamedBefore.rowWriter(), renamed.rowWriter());
+        ResourceDescriptionService.ResourceSchema retyped = service.getSchema(3);
+        assertEquals("float", retyped.propsData().get("age").type());
+        assertNotSame(retypedBefore.rowWriter(), retyped.rowWriter());
+        assertSame(service.getSchema(1), service.getSchema(1));
+
+        // a removed resource is looked up in the database like any unknown one, once
+        assertNull(service.getSchema(4));
+        assertNull(service.getSchema(4));
+        assertEquals(List.of("versions", "ids [2, 3]", "id 4"), database.loads);
+    }
+
+    @Test
+    void pastHalfOfTheResourcesARefreshScansEverything() {
+        for (int id = 1; id <= 4; id++) {
+            database.putResource(id, "resource-" + id);
+        }
+        ResourceDescriptionService service = service("");
+
+        // half of them is still loaded by id
+        database.putResource(1, "changed");
+        database.putResource(2, "changed");
+        database.loads.clear();
+        service.refreshCache();
+        assertEquals(List.of("versions", "ids [1, 2]"), database.loads);
+
+        database.putResource(1, "changed again");
+        database.putResource(2, "changed again");
+        database.putResource(3, "changed again");
+        database.loads.clear();
+        service.refreshCache();
+        assertEquals(List.of("versions", "all"), database.loads);
+        assertEquals("changed again", service.getSchema(3).name());
+        assertEquals("resource-4", service.getSchema(4).name());
+    }
+
+    @Test
+    void aNewResourceIsLoadedOnItsFirstLookup() {
+        database.putResource(1, "resource-1");
+        ResourceDescriptionService service = service("");
+        database.putResource(2, "resource-2");
+        database.loads.clear();
+
+        assertEquals("resource-2", service.getSchema(2).name());
+        assertEquals("resource-2", service.getSchema(2).name());
+        assertEquals(List.of("id 2"), database.loads);
+    }
+
+    @Test
+    void theSnapshotIsReadInsteadOfTheDatabase() throws Exception {
+        for (int id = 1; id <= 3; id++) {
+            database.putResource(id, "resource-" + id);
+        }
+        String snapshot = directory.resolve("resources.json").toString();
+        ResourceDescriptionService first = service(snapshot);
+        assertTrue(Files.exists(Path.of(snapshot)));
+        database.loads.clear();
+
+        ResourceDescriptionService second = service(snapshot);
+        assertEquals(List.of(), database.loads);
+        for (int id = 1; id <= 3; id++) {
+            ResourceDescriptionService.ResourceSchema written = first.getSchema(id);
+            ResourceDescriptionService.ResourceSchema read = second.getSchema(id);
+            assertEquals(written.version(), read.version());
+            assertEquals(written.description(), read.description());
+            assertEquals(written.csvFormat(), read.csvFormat());
+            assertEquals(written.propsData(), read.propsData());
+            // in the order of the columns, not of the names
+            assertEquals(List.of("name", "age"), read.fieldNames());
+            assertNotNull(read.rowWriter());
+        }
+        assertEquals(List.of(), database.loads);
+
+        // the first refresh after the start only loads what changed since the snapshot
+        database.putResource(3, "changed");
+        second.refreshCache();
+        assertEquals(List.of("versions", "ids [3]"), database.loads);
+        assertEquals("changed", second.getSchema(3).name());
+    }
+
+    private ResourceDescriptionService service(String snapshotPath) {
+        return new ResourceDescriptionService(database, database.propsDataService(), 100, Duration.ofHours(1),
+                "ORA_ROWSCN", snapshotPath);
+    }
+
+    // RESOURCE_DESCRIPTION and PROPS_DATA in memory. only answers the queries of ResourceDescriptionService and
+    // keeps a list of what was loaded, versions, all resources, some resources by id or a single one.
+    private static class Database extends JdbcTemplate {
+        private final Map<Integer, Map<String, Object>> descriptions = new TreeMap<>();
+        private final Map<Integer, Map<String, PropsDataService.PropsData>> fields = new TreeMap<>();
+        private final Map<Integer, Integer> fieldVersions = new HashMap<>();
+        private final List<String> loads = new ArrayList<>();
+        private int scn;
+
+        void putResource(int resourceId, String name) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("RESOURCE_ID", resourceId);
+            row.put("RESOURCE_VERSION", "v" + scn);
+            row.put("RESOURCE_NAME", name);
+            row.put("FILE_TYPE", "CSV");
+            row.put("DELIMITER", ";");
+            row.put("END_LINE", "~");
+            row.put("VERSION", ++scn);
+            descriptions.put(resourceId, row);
+            if (!fields.containsKey(resourceId)) {
+                putFields(resourceId, Map.of("name", "string", "age", "int"));
+            }
+        }
+
+        // name before age, whatever the order of the map
+        void putFields(int resourceId, Map<String, String> types) {
+            Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+            propsData.put("name", new PropsDataService.PropsData(types.get("name"), null));
+            propsData.put("age", new PropsDataService.PropsData(types.get("age"), null));
+            fields.put(resourceId, propsData);
+            fieldVersions.put(resourceId, ++scn);
+        }
+
+        void removeResource(int resourceId) {
+            descriptions.remove(resourceId);
+            fields.remove(resourceId);
+        }
+
+        PropsDataService propsDataService() {
+            return new PropsDataService(this, "ROWID") {
+                @Override
+                public Map<Integer, String> getPropsVersions(String versionColumn) {
+                    Map<Integer, String> versions = new HashMap<>();
+                    fields.forEach((resourceId, propsData) ->
+                            versions.put(resourceId, fieldVersions.get(resourceId) + "/" + propsData.size()));
+                    return versions;
+                }
+
+                @Override
+                public Map<Integer, Map<String, PropsData>> getAllPropsData() {
+                    return new HashMap<>(fields);
+                }
+
+                @Override
+                public Map<Integer, Map<String, PropsData>> getPropsData(List<Integer> resourceIds) {
+                    Map<Integer, Map<String, PropsData>> propsData = new HashMap<>(fields);
+                    propsData.keySet().retainAll(resourceIds);
+                    return propsData;
+                }
+
+                @Override
+                public Map<String, PropsData> getPropsData(int resourceId) {
+                    return fields.getOrDefault(resourceId, Map.of());
+                }
+            };
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler) {
+            boolean versions = sql.contains("AS VERSION");
+            loads.add(versions ? "versions" : "all");
+            processRows(new ArrayList<>(descriptions.values()), handler);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler, Object... args) {
+            List<Integer> ids = Arrays.stream(args).map(Integer.class::cast).sorted().toList();
+            loads.add("ids " + ids);
+            processRows(ids.stream().filter(descriptions::containsKey).map(descriptions::get).toList(), handler);
+        }
+
+        @Override
+        public <T> T query(String sql, ResultSetExtractor<T> extractor, Object... args) {
+            int resourceId = (Integer) args[0];
+            loads.add("id " + resourceId);
+            Map<String, Object> row = descriptions.get(resourceId);
+            try {
+                return extractor.extractData(resultSet(row == null ? List.of() : List.of(row)));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static void processRows(List<Map<String, Object>> rows, RowCallbackHandler handler) {
+            ResultSet resultSet = resultSet(rows);
+            try {
+                while (resultSet.next()) {
+                    handler.processRow(resultSet);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static ResultSet resultSet(List<Map<String, Object>> rows) {
+            int[] cursor = {-1};
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "next" -> ++cursor[0] < rows.size();
+                        case "getInt" -> ((Number) rows.get(cursor[0]).get((String) args[0])).intValue();
+                        case "getString" -> String.valueOf(rows.get(cursor[0]).get((String) args[0]));
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.Services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowConversionEngineTest {
+    private final ExecutorService caller = Executors.newSingleThreadExecutor();
+    private RowConversionEngine engine;
+
+    @AfterEach
+    void shutdown() {
+        caller.shutdownNow();
+        engine.shutdown();
+    }
+
+    @Test
+    void orderedBatchesReachTheSinkInInputOrder() throws Exception {
+        engine = new RowConversionEngine(4, 3, 0, false);
+        List<String> lines = lines(100);
+        List<List<String>> batches = new ArrayList<>();
+        // batches take uneven time, later ones are often done first
+        long rows = engine.convert(reader(lines), () -> line -> {
+            sleep(ThreadLocalRandom.current().nextInt(3));
+            return line.toUpperCase();
+        }, batches::add, true);
+
+        assertEquals(100, rows);
+        assertEquals(lines.stream().map(String::toUpperCase).toList(),
+                batches.stream().flatMap(List::stream).toList());
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 3));
+    }
+
+    @Test
+    void completionOrderEmitsEveryBatch() throws Exception {
+        engine = new RowConversionEngine(4, 5, 0, false);
+        List<String> lines = lines(103);
+        List<String> converted = Collections.synchronizedList(new ArrayList<>());
+        // the first batch is the slowest, it is overtaken by the others
+        long rows = engine.convert(reader(lines), () -> line -> {
+            if (line.equals("line-0")) {
+                sleep(200);
+            }
+            return line;
+        }, converted::addAll, false);
+
+        assertEquals(103, rows);
+        assertEquals(lines,
+                converted.stream().sorted(Comparator.comparingInt(RowConversionEngineTest::number)).toList());
+        assertNotEquals("line-0", converted.get(0));
+    }
+
+    @Test
+    void maxInFlightHoldsBackTheReader() throws Exception {
+        engine = new RowConversionEngine(2, 1, 2, false);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger read = new AtomicInteger();
+        RowConversionEngine.RowSource<Integer> source = () -> read.get() < 10 ? read.incrementAndGet() : null;
+        Function<Integer, Integer> blocked = row -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return row;
+        };
+        List<Integer> converted = Collections.synchronizedList(new ArrayList<>());
+        Future<Long> rows = caller.submit(() -> engine.convert(source, () -> blocked, converted::addAll, true));
+
+        // two batches in flight, the reader holds the third row and waits for the first batch
+        Thread.sleep(200);
+        assertEquals(3, read.get());
+        assertFalse(rows.isDone());
+
+        release.countDown();
+        assertEquals(10, rows.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), converted);
+    }
+
+    @Test
+    void aFailedBatchIsAConversionException() throws Exception {
+        engine = new RowConversionEngine(2, 2, 0, false);
+        IllegalArgumentException error = new IllegalArgumentException("bad line");
+        List<String> converted = new ArrayList<>();
+        RowConversionEngine.ConversionException e = assertThrows(RowConversionEngine.ConversionException.class,
+                () -> engine.convert(reader(lines(10)), () -> line -> {
+                    if (line.equals("line-5")) {
+                        throw error;
+                    }
+                    return line;
+                }, converted::addAll, true));
+
+        assertSame(error, e.getCause());
+        assertEquals("bad line", e.getMessage());
+        // the batches before the failed one were sent, none after it
+        assertEquals(lines(4), converted);
+    }
+
+    private static List<String> lines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line-" + i);
+        }
+        return lines;
+    }
+
+    private static BufferedReader reader(List<String> lines) {
+        return new BufferedReader(new StringReader(String.join("\n", lines)));
+    }
+
+    private static int number(String line) {
+        return Integer.parseInt(line.substring("line-".length()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
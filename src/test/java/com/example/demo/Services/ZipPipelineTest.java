@@ -0,0 +1,101 @@
+package com.example.demo.Services;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Formats.FormatReaders;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.ResultSink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ZipPipelineTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ResourceDescriptionService resourceDescriptionService = mock(ResourceDescriptionService.class);
+    private final ZipProcessor zipProcessor = mock(ZipProcessor.class);
+    private final ResultSink sink = mock(ResultSink.class);
+    private ZipPipeline pipeline;
+    private String message;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FormatReader csv = mock(FormatReader.class);
+        when(csv.fileTypes()).thenReturn(Set.of("CSV"));
+        when(resourceDescriptionService.getSchema(1)).thenReturn(schema());
+        pipeline = new ZipPipeline(resourceDescriptionService, zipProcessor, new FormatReaders(List.of(csv)),
+                new PipelineMetrics(registry, 1));
+
+        Path zip = directory.resolve("data.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("metadata.json"));
+            out.write("{\"resourceId\":1}".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        message = "{\"zipPath\":\"" + zip + "\"}";
+    }
+
+    @Test
+    void aWrittenZipSucceeds() throws IOException {
+        when(zipProcessor.process(any(), any(), any(), any(), any(), anyMap(), any(), any())).thenReturn(3L);
+        when(sink.finish()).thenReturn(true);
+
+        assertTrue(pipeline.processZip(message, path -> sink));
+        assertEquals(1, zips("success"));
+    }
+
+    @Test
+    void aFinishFailureIsSuppressedByTheFailureOfTheZip() throws IOException {
+        IOException error = new IOException("broken entry");
+        IOException finishError = new IOException("producer closed");
+        when(zipProcessor.process(any(), any(), any(), any(), any(), anyMap(), any(), any())).thenThrow(error);
+        when(sink.finish()).thenThrow(finishError);
+
+        assertFalse(pipeline.processZip(message, path -> sink));
+        assertArrayEquals(new Throwable[]{finishError}, error.getSuppressed());
+        assertEquals(1, zips("failure"));
+    }
+
+    @Test
+    void aFinishFailureFailsAProcessedZip() throws IOException {
+        when(zipProcessor.process(any(), any(), any(), any(), any(), anyMap(), any(), any())).thenReturn(3L);
+        when(sink.finish()).thenThrow(new IOException("producer closed"));
+
+        assertFalse(pipeline.processZip(message, path -> sink));
+        assertEquals(1, zips("failure"));
+    }
+
+    private long zips(String outcome) {
+        return registry.get("pipeline.zip").tag("outcome", outcome).timer().count();
+    }
+
+    private static ResourceDescriptionService.ResourceSchema schema() {
+        Map<String, PropsDataService.PropsData> propsData = new LinkedHashMap<>();
+        propsData.put("name", new PropsDataService.PropsData("string", null));
+        return new ResourceDescriptionService.ResourceSchema(1, "v1", "resource", "CSV",
+                new ResourceDescriptionService.CsvFormat(";", "~"), propsData);
+    }
+}
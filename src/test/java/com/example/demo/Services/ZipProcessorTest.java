@@ -0,0 +1,217 @@
+package com.example.demo.Services;
+
+import com.example.demo.Formats.FormatReader;
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Zip.ZipArchive;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipProcessorTest {
+    private static final List<String> ENTRIES = List.of("a.csv", "b.csv", "c.csv", "d.csv", "e.csv", "f.csv");
+
+    // a pool of 4 threads, 2 of them for the entries of one zip
+    private final ZipProcessor zipProcessor = new ZipProcessor(4, 2);
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void shutdown() {
+        zipProcessor.shutdown();
+    }
+
+    @Test
+    void theEntriesOfAZipRunUpToMaxEntriesPerZipAtATime() throws IOException {
+        FakeReader reader = new FakeReader(name -> {
+            sleep(30);
+            return 1;
+        });
+        List<ZipProcessor.OutputRecord> sent = Collections.synchronizedList(new ArrayList<>());
+        try (ZipArchive archive = ZipArchive.open(zip(ENTRIES).toString())) {
+            assertEquals(6, zipProcessor.process(archive, reader, null, new byte[0], null, sent::addAll));
+        }
+        assertEquals(ENTRIES, reader.started.stream().sorted().toList());
+        assertEquals(6, sent.size());
+        assertEquals(2, reader.maxRunning.get());
+    }
+
+    @Test
+    void aFailedEntryFailsTheZipAndCancelsTheOthers() throws Exception {
+        IOException error = new IOException("broken entry");
+        // fails once the entry next to it is running
+        CountDownLatch running = new CountDownLatch(1);
+        Set<String> interrupted = ConcurrentHashMap.newKeySet();
+        FakeReader reader = new FakeReader(name -> {
+            if (name.equals("b.csv")) {
+                await(running);
+                throw error;
+            }
+            running.countDown();
+            // the other entries take far longer than the test, unless they are cancelled
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                interrupted.add(name);
+                throw new InterruptedIOException();
+            }
+            return 1;
+        });
+        long started = System.nanoTime();
+        try (ZipArchive archive = ZipArchive.open(zip(ENTRIES).toString())) {
+            assertSame(error, assertThrows(IOException.class,
+                    () -> zipProcessor.process(archive, reader, null, new byte[0], null, chunk -> {
+                    })));
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(10));
+
+        // the entry running next to the failed one was interrupted, the later ones never started
+        reader.awaitIdle();
+        assertEquals(List.of("a.csv", "b.csv"), reader.started.stream().sorted().toList());
+        assertEquals(Set.of("a.csv"), interrupted);
+
+        // nothing of the failed zip is left on the pool, the next zip gets all its slots
+        FakeReader next = new FakeReader(name -> {
+            sleep(30);
+            return 1;
+        });
+        try (ZipArchive archive = ZipArchive.open(zip(ENTRIES).toString())) {
+            assertEquals(6, zipProcessor.process(archive, next, null, new byte[0], null, chunk -> {
+            }));
+        }
+        assertEquals(2, next.maxRunning.get());
+    }
+
+    @Test
+    void aRuntimeExceptionOfAnEntryIsRethrownAsItIs() throws IOException {
+        IllegalStateException error = new IllegalStateException("bad row");
+        FakeReader reader = new FakeReader(name -> {
+            if (name.equals("c.csv")) {
+                throw error;
+            }
+            return 1;
+        });
+        try (ZipArchive archive = ZipArchive.open(zip(ENTRIES).toString())) {
+            assertSame(error, assertThrows(IllegalStateException.class,
+                    () -> zipProcessor.process(archive, reader, null, new byte[0], null, chunk -> {
+                    })));
+        }
+    }
+
+    @Test
+    void anErrorOfAnEntryIsWrappedInAnIOException() throws IOException {
+        AssertionError error = new AssertionError("unexpected");
+        FakeReader reader = new FakeReader(name -> {
+            if (name.equals("d.csv")) {
+                throw error;
+            }
+            return 1;
+        });
+        try (ZipArchive archive = ZipArchive.open(zip(ENTRIES).toString())) {
+            IOException e = assertThrows(IOException.class,
+                    () -> zipProcessor.process(archive, reader, null, new byte[0], null, chunk -> {
+                    }));
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryBody {
+        long read(String name) throws IOException;
+    }
+
+    // reads every entry of the zip with the body, counting the entries running at the same time
+    private static final class FakeReader implements FormatReader {
+        private final EntryBody body;
+        private final Set<String> started = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        private FakeReader(EntryBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public Set<String> fileTypes() {
+            return Set.of("CSV");
+        }
+
+        @Override
+        public List<ZipArchiveEntry> dataEntries(ZipArchive archive) {
+            return archive.entries();
+        }
+
+        @Override
+        public long read(ZipArchive archive, ZipArchiveEntry entry, ResourceDescriptionService.ResourceSchema schema,
+                         byte[] valuePrefix, PipelineMetrics.ResourceMeters meters, long skipRows,
+                         ZipProcessor.ChunkSink sink) throws IOException {
+            started.add(entry.getName());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                long rows = body.read(entry.getName());
+                sink.accept(List.of(new ZipProcessor.OutputRecord(entry.getName(), new byte[0])));
+                return rows;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        private void awaitIdle() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (running.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, running.get());
+        }
+    }
+
+    private Path zip(List<String> names) throws IOException {
+        Path zip = Files.createTempFile(directory, "data", ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes());
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
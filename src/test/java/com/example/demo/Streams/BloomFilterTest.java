@@ -0,0 +1,59 @@
+package com.example.demo.Streams;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void everyKeyThatWasPutIsFound() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("key-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i), "key-" + i);
+        }
+    }
+
+    @Test
+    void theFalsePositiveRateStaysNearTheTarget() {
+        for (double target : new double[]{0.01, 0.001}) {
+            BloomFilter filter = new BloomFilter(50_000, target);
+            for (int i = 0; i < 50_000; i++) {
+                filter.put("key-" + i);
+            }
+            int falsePositives = 0;
+            int lookups = 200_000;
+            for (int i = 0; i < lookups; i++) {
+                if (filter.mightContain("other-" + i)) {
+                    falsePositives++;
+                }
+            }
+            double rate = (double) falsePositives / lookups;
+            assertTrue(rate < target * 1.5, "false positive rate " + rate + " for a target of " + target);
+        }
+    }
+
+    @Test
+    void isSizedForTheExpectedKeys() {
+        // 95,851 bits for 10,000 keys at 1%, rounded up to whole longs
+        assertEquals(1498 * 8, new BloomFilter(10_000, 0.01).sizeInBytes());
+        assertEquals(8, new BloomFilter(1, 0.5).sizeInBytes());
+    }
+
+    @Test
+    void clearForgetsEveryKey() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("key-" + i);
+        }
+        filter.clear();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(filter.mightContain("key-" + i), "key-" + i);
+        }
+    }
+}
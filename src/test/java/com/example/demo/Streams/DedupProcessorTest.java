@@ -0,0 +1,122 @@
+package com.example.demo.Streams;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DedupProcessorTest {
+    private static final Duration RETENTION = Duration.ofSeconds(10);
+
+    private MockProcessorContext<String, byte[]> context;
+    private WindowStore<String, Long> store;
+
+    @BeforeEach
+    void setUp() {
+        context = new MockProcessorContext<>();
+        store = Stores.windowStoreBuilder(
+                        Stores.inMemoryWindowStore(DedupProcessorSupplier.DEDUP_STORE, Duration.ofDays(1), RETENTION,
+                                false),
+                        Serdes.String(), Serdes.Long())
+                .withLoggingDisabled()
+                .build();
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+    }
+
+    @Test
+    void dropsKeysSeenWithinTheRetention() {
+        DedupProcessor processor = processor(0);
+        process(processor, "a", 1000);
+        process(processor, "b", 2000);
+        process(processor, "a", 5000);
+        process(processor, "a", 12_000);
+        assertEquals(List.of("a", "b", "a"), forwardedKeys());
+        assertEquals(1.0, metric("duplicates-total"));
+    }
+
+    @Test
+    void theFiltersRotateOnStreamTime() {
+        DedupProcessor processor = processor(1000);
+        MockProcessorContext.CapturedPunctuator punctuator = context.scheduledPunctuators().get(0);
+        assertEquals(PunctuationType.STREAM_TIME, punctuator.getType());
+        assertEquals(RETENTION.dividedBy(10), punctuator.getInterval());
+
+        process(processor, "a", 1000);
+        // the store was empty, the first period starts here
+        punctuator.getPunctuator().punctuate(1000);
+        assertEquals(1.0, metric("filter-negatives-total"));
+
+        // not a retention period of stream time yet, however long it took on the clock
+        punctuator.getPunctuator().punctuate(10_999);
+        process(processor, "a", 1100);
+        assertEquals(1.0, metric("filter-negatives-total"));
+        assertEquals(1.0, metric("duplicates-total"));
+
+        // first rotation, the key moves to the older filter and is still found
+        punctuator.getPunctuator().punctuate(11_000);
+        process(processor, "a", 1200);
+        assertEquals(1.0, metric("filter-negatives-total"));
+        assertEquals(2.0, metric("duplicates-total"));
+
+        // second rotation, the older filter is cleared
+        punctuator.getPunctuator().punctuate(21_000);
+        process(processor, "a", 25_000);
+        assertEquals(2.0, metric("filter-negatives-total"));
+        assertEquals(List.of("a", "a"), forwardedKeys());
+    }
+
+    @Test
+    void restoredKeysStayInTheFiltersForTheRetentionAfterTheNewestOfThem() {
+        store.put("old", 1000L, 1000L);
+        store.put("new", 50_000L, 50_000L);
+        DedupProcessor processor = processor(1000);
+        MockProcessorContext.CapturedPunctuator punctuator = context.scheduledPunctuators().get(0);
+
+        // stream time is far past the old key, but the newest restored key is younger than the retention
+        punctuator.getPunctuator().punctuate(59_999);
+        process(processor, "new", 55_000);
+        assertEquals(0.0, metric("filter-negatives-total"));
+        assertEquals(1.0, metric("duplicates-total"));
+
+        punctuator.getPunctuator().punctuate(60_000);
+        process(processor, "new", 56_000);
+        assertEquals(0.0, metric("filter-negatives-total"));
+
+        punctuator.getPunctuator().punctuate(70_000);
+        process(processor, "new", 70_000);
+        assertEquals(1.0, metric("filter-negatives-total"));
+    }
+
+    private DedupProcessor processor(long bloomExpectedKeys) {
+        DedupProcessor processor = new DedupProcessor(RETENTION, bloomExpectedKeys, 0.01);
+        processor.init(context);
+        return processor;
+    }
+
+    private void process(DedupProcessor processor, String key, long timestamp) {
+        processor.process(new Record<>(key, new byte[]{1}, timestamp));
+    }
+
+    private List<String> forwardedKeys() {
+        return context.forwarded().stream().map(forward -> (String) forward.record().key()).toList();
+    }
+
+    private double metric(String name) {
+        return context.metrics().metrics().entrySet().stream()
+                .filter(metric -> metric.getKey().name().equals(name))
+                .map(metric -> (Double) ((Metric) metric.getValue()).metricValue())
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no metric " + name));
+    }
+}
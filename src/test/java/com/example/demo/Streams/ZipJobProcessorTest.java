@@ -0,0 +1,203 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import com.example.demo.Output.ResultSink;
+import com.example.demo.Services.ZipPipeline;
+import com.example.demo.Services.ZipProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ZipJobProcessorTest {
+    private static final String ZIP = "{\"zipPath\":\"/data/a.zip\"}";
+    private static final int ROWS = 10;
+    private static final int CHUNK = 3;
+
+    private final PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry(), 1);
+    private final ZipPipeline pipeline = mock(ZipPipeline.class);
+    private final List<Map<String, ZipProcessor.EntryProgress>> resumedFrom = new CopyOnWriteArrayList<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final CountDownLatch crash = new CountDownLatch(1);
+    private ZipJobScheduler scheduler;
+    private MockProcessorContext<String, byte[]> context;
+    private KeyValueStore<String, String> jobStore;
+    private KeyValueStore<String, String> progressStore;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new ZipJobScheduler(1, Long.MAX_VALUE, 1, TimeUnit.SECONDS.toNanos(1), metrics);
+        context = new MockProcessorContext<>();
+        context.setCurrentSystemTimeMs(5000L);
+        jobStore = store(ZipJobProcessorSupplier.JOB_STORE);
+        progressStore = store(ZipJobProcessorSupplier.PROGRESS_STORE);
+        // a zip of one entry, sent in chunks with a checkpoint behind each. the first run stops after two chunks
+        // as if the instance went down, the next one runs to the end
+        when(pipeline.processZip(anyString(), anyMap(), any())).thenAnswer(invocation -> {
+            Map<String, ZipProcessor.EntryProgress> resumeFrom = invocation.getArgument(1);
+            Function<String, ResultSink> sinkFactory = invocation.getArgument(2);
+            resumedFrom.add(resumeFrom);
+            ResultSink sink = sinkFactory.apply("/data/a.zip");
+            ZipProcessor.EntryProgress progress = resumeFrom.get("a.csv");
+            int row = progress == null ? 0 : (int) progress.rows();
+            while (row < ROWS) {
+                if (resumedFrom.size() == 1 && row == 2 * CHUNK) {
+                    stopped.countDown();
+                    crash.await();
+                }
+                int end = Math.min(row + CHUNK, ROWS);
+                for (; row < end; row++) {
+                    sink.send("row-" + row, ("value-" + row).getBytes(StandardCharsets.UTF_8));
+                }
+                sink.checkpoint("a.csv", row, row == ROWS);
+            }
+            return sink.finish();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        crash.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void aResumedJobSkipsTheForwardedRows() throws Exception {
+        ZipJobProcessor first = processor();
+        first.init(context);
+        context.setRecordMetadata("input_zip_topic", 0, 42);
+        first.process(new Record<>(null, ZIP, 1000L));
+        String jobId = "input_zip_topic-0@42";
+        assertEquals(ZIP, jobStore.get(jobId));
+
+        // the progress is stored once the records it counts are forwarded
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        drainUntil(() -> progressStore.get(jobId) != null);
+        assertEquals(rows(0, 2 * CHUNK), forwardedKeys());
+        assertEquals("{\"a.csv\":{\"rows\":6,\"complete\":false}}", progressStore.get(jobId));
+
+        // the task moves, the next owner finds the job in the restored stores
+        first.close();
+        context.resetForwards();
+        ZipJobProcessor second = processor();
+        second.init(context);
+        drainUntil(() -> jobStore.get(jobId) == null);
+
+        assertEquals(Map.of("a.csv", new ZipProcessor.EntryProgress(2 * CHUNK, false)), resumedFrom.get(1));
+        assertEquals(rows(2 * CHUNK, ROWS), forwardedKeys());
+        assertTrue(context.forwarded().stream().allMatch(forward -> forward.record().timestamp() > 0));
+        assertNull(progressStore.get(jobId));
+        second.close();
+    }
+
+    @Test
+    void aRedeliveredRecordOfAResumedJobIsSkipped() throws Exception {
+        ZipJobProcessor first = processor();
+        first.init(context);
+        context.setRecordMetadata("input_zip_topic", 0, 42);
+        first.process(new Record<>(null, ZIP, 1000L));
+        String jobId = "input_zip_topic-0@42";
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        drainUntil(() -> progressStore.get(jobId) != null);
+
+        // at_least_once: the job store kept the job, the input offset was not committed and comes again
+        first.close();
+        context.resetForwards();
+        ZipJobProcessor second = processor();
+        second.init(context);
+        second.process(new Record<>(null, ZIP, 1000L));
+        drainUntil(() -> jobStore.get(jobId) == null);
+
+        assertEquals(2, resumedFrom.size());
+        assertEquals(rows(2 * CHUNK, ROWS), forwardedKeys());
+        second.close();
+    }
+
+    @Test
+    void withoutCheckpointsAResumedJobStartsOver() throws Exception {
+        ZipJobProcessor first = processor(false);
+        first.init(context);
+        context.setRecordMetadata("input_zip_topic", 0, 7);
+        first.process(new Record<>(null, ZIP, 1000L));
+        drainUntil(() -> context.forwarded().size() == 2 * CHUNK);
+        assertNull(progressStore.get("input_zip_topic-0@7"));
+
+        first.close();
+        context.resetForwards();
+        ZipJobProcessor second = processor(false);
+        second.init(context);
+        drainUntil(() -> jobStore.get("input_zip_topic-0@7") == null);
+        assertEquals(Map.of(), resumedFrom.get(1));
+        assertEquals(rows(0, ROWS), forwardedKeys());
+        second.close();
+    }
+
+    private ZipJobProcessor processor() {
+        return processor(true);
+    }
+
+    private ZipJobProcessor processor(boolean checkpoints) {
+        return new ZipJobProcessor(pipeline, null, scheduler, ZipJobProcessorSupplier.OutputMode.STREAMS, 100,
+                1 << 20, Duration.ofMillis(10), 1000, metrics.outputWait(), metrics.forward(), checkpoints);
+    }
+
+    private KeyValueStore<String, String> store(String name) {
+        KeyValueStore<String, String> store = Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(name),
+                Serdes.String(), Serdes.String()).withLoggingDisabled().build();
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+        return store;
+    }
+
+    // runs the last scheduled punctuator, the drain of the processor initialized last
+    private void drain() {
+        List<MockProcessorContext.CapturedPunctuator> punctuators = context.scheduledPunctuators();
+        punctuators.get(punctuators.size() - 1).getPunctuator().punctuate(System.currentTimeMillis());
+    }
+
+    private void drainUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5 seconds");
+            drain();
+            Thread.sleep(5);
+        }
+    }
+
+    private List<String> forwardedKeys() {
+        return context.forwarded().stream().map(forward -> (String) forward.record().key()).toList();
+    }
+
+    private static List<String> rows(int from, int to) {
+        List<String> rows = new ArrayList<>();
+        for (int row = from; row < to; row++) {
+            rows.add("row-" + row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Metrics.PipelineMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipJobSchedulerTest {
+    private static final long NO_AGING = TimeUnit.HOURS.toNanos(1);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+    private ZipJobScheduler scheduler;
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void smallerZipsRunFirst() throws Exception {
+        scheduler = scheduler(1, 1_000_000, 1, NO_AGING);
+        CountDownLatch release = blockWorkers(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        futures.add(submit("large", 10_000_000));
+        futures.add(submit("medium", 100));
+        Future<Boolean> cancelled = submit("cancelled", 1);
+        futures.add(submit("small", 10));
+        futures.add(submit("unknown", 0));
+        futures.add(scheduler.submit(job("unreadable"), () -> {
+            throw new IllegalStateException("no such file");
+        }));
+        cancelled.cancel(true);
+        release.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+        // a zip whose size is unknown or can't be read goes first, in the order it was submitted
+        assertEquals(List.of("unknown", "unreadable", "small", "medium", "large"), order);
+        assertEquals(5, registry.get("pipeline.job.wait").tag("size", "small").timer().count());
+        assertEquals(1, registry.get("pipeline.job.wait").tag("size", "large").timer().count());
+    }
+
+    @Test
+    void aZipThatWaitedLongEnoughOvertakesSmallerOnes() throws Exception {
+        // every millisecond of waiting is worth half the size
+        scheduler = scheduler(1, Long.MAX_VALUE, 1, TimeUnit.MILLISECONDS.toNanos(1));
+        CountDownLatch release = blockWorkers(1);
+        // size class 21 against 2, the large one has waited for 200 ms
+        Future<Boolean> large = submit("large", 1 << 20);
+        Thread.sleep(200);
+        Future<Boolean> small = submit("small", 2);
+        release.countDown();
+        assertTrue(large.get(5, TimeUnit.SECONDS));
+        assertTrue(small.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("large", "small"), order);
+    }
+
+    @Test
+    void withoutAgingTheSmallerZipOvertakes() throws Exception {
+        scheduler = scheduler(1, Long.MAX_VALUE, 1, NO_AGING);
+        CountDownLatch release = blockWorkers(1);
+        Future<Boolean> large = submit("large", 1 << 20);
+        Thread.sleep(200);
+        Future<Boolean> small = submit("small", 2);
+        release.countDown();
+        assertTrue(large.get(5, TimeUnit.SECONDS));
+        assertTrue(small.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("small", "large"), order);
+    }
+
+    @Test
+    void atMostMaxLargeJobsRunAtATime() throws Exception {
+        scheduler = scheduler(3, 1000, 1, NO_AGING);
+        AtomicInteger startedLarge = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Boolean>> large = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            large.add(scheduler.submit(() -> {
+                startedLarge.incrementAndGet();
+                return release.await(5, TimeUnit.SECONDS);
+            }, () -> 5000));
+        }
+        // a free worker still takes the small zips
+        assertTrue(submit("small", 10).get(5, TimeUnit.SECONDS));
+        awaitTrue(() -> jobs("queued") == 1 && jobs("running") == 1);
+        Thread.sleep(100);
+        assertEquals(1, startedLarge.get());
+        assertEquals(1, jobs("queued"));
+
+        release.countDown();
+        for (Future<Boolean> future : large) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, startedLarge.get());
+        awaitTrue(() -> jobs("running") == 0);
+    }
+
+    @Test
+    void cancellingARunningJobInterruptsIt() throws Exception {
+        scheduler = scheduler(1, 1000, 1, NO_AGING);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Boolean> running = scheduler.submit(() -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            return true;
+        }, () -> 0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        running.cancel(true);
+        // the worker is free again, and not interrupted anymore
+        assertTrue(scheduler.submit(() -> !Thread.currentThread().isInterrupted(), () -> 0)
+                .get(5, TimeUnit.SECONDS));
+        assertTrue(running.isCancelled());
+    }
+
+    private ZipJobScheduler scheduler(int workers, long largeSize, int maxLargeJobs, long agingNanos) {
+        return new ZipJobScheduler(workers, largeSize, maxLargeJobs, agingNanos, new PipelineMetrics(registry, 1));
+    }
+
+    // keeps every worker busy until the returned latch is counted down
+    private CountDownLatch blockWorkers(int workers) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            scheduler.submit(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }, () -> 0);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private Future<Boolean> submit(String name, long size) {
+        return scheduler.submit(job(name), () -> size);
+    }
+
+    private Callable<Boolean> job(String name) {
+        return () -> order.add(name);
+    }
+
+    private double jobs(String state) {
+        return registry.get("pipeline.jobs").tag("state", state).gauge().value();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5 seconds");
+            Thread.sleep(10);
+        }
+    }
+}
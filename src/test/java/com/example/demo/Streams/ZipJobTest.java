@@ -0,0 +1,125 @@
+package com.example.demo.Streams;
+
+import com.example.demo.Services.ZipProcessor;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.streams.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipJobTest {
+    private final Timer outputWait = new SimpleMeterRegistry().timer("pipeline.output.wait");
+
+    @Test
+    void progressIsTakenOverOnlyOnceTheRecordsBeforeItAreForwarded() throws Exception {
+        ZipJob job = job(true, Map.of());
+        job.send("k1", bytes(1));
+        job.send("k2", bytes(1));
+        job.checkpoint("a.csv", 2, false);
+        job.send("k3", bytes(1));
+
+        assertEquals("k1", job.poll().key);
+        assertNull(job.takeProgress());
+        assertEquals("k2", job.poll().key);
+        assertNull(job.takeProgress());
+        assertEquals("k3", job.poll().key);
+        assertEquals(Map.of("a.csv", new ZipProcessor.EntryProgress(2, false)), job.takeProgress());
+        // only handed out once per change
+        assertNull(job.takeProgress());
+
+        job.checkpoint("a.csv", 3, true);
+        assertNull(job.poll());
+        assertEquals(Map.of("a.csv", new ZipProcessor.EntryProgress(3, true)), job.takeProgress());
+        assertEquals(3, job.forwarded());
+    }
+
+    @Test
+    void progressStartsFromWhereTheJobWasResumed() throws Exception {
+        ZipJob job = job(true, Map.of("a.csv", new ZipProcessor.EntryProgress(10, true),
+                "b.csv", new ZipProcessor.EntryProgress(4, false)));
+        job.send("k", bytes(1));
+        job.checkpoint("b.csv", 5, false);
+        job.poll();
+        assertNull(job.poll());
+        assertEquals(Map.of("a.csv", new ZipProcessor.EntryProgress(10, true),
+                "b.csv", new ZipProcessor.EntryProgress(5, false)), job.takeProgress());
+        assertEquals(Map.of("a.csv", new ZipProcessor.EntryProgress(10, true),
+                "b.csv", new ZipProcessor.EntryProgress(4, false)), job.resumeFrom());
+    }
+
+    @Test
+    void withoutCheckpointsProgressIsIgnored() throws Exception {
+        ZipJob job = job(false, Map.of());
+        job.send("k", bytes(1));
+        job.checkpoint("a.csv", 1, true);
+        assertEquals("k", job.poll().key);
+        assertNull(job.poll());
+        assertNull(job.takeProgress());
+    }
+
+    @Test
+    void aWorkerWaitsForRoomInTheQueue() throws Exception {
+        // room for 10 bytes, a record larger than that takes all of them
+        ZipJob job = new ZipJob("job", "{}", 0, 100, 10, outputWait, false, Map.of());
+        job.send("k1", bytes(6));
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blocked = worker.submit(() -> {
+                job.send("k2", bytes(20));
+                return null;
+            });
+            Thread.sleep(100);
+            assertFalse(blocked.isDone());
+            KeyValue<String, byte[]> first = job.poll();
+            assertEquals("k1", first.key);
+            blocked.get(5, TimeUnit.SECONDS);
+            assertEquals(20, job.poll().value.length);
+            assertEquals(1, outputWait.count());
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test
+    void finishTellsWhetherEverythingWasQueued() throws Exception {
+        ZipJob done = job(false, Map.of());
+        done.start(CompletableFuture.completedFuture(true));
+        assertTrue(done.finish());
+
+        ZipJob cancelled = job(false, Map.of());
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        cancelled.start(future);
+        future.cancel(true);
+        assertFalse(cancelled.finish());
+
+        // one record fits, the second waits and is interrupted
+        ZipJob interrupted = new ZipJob("job", "{}", 0, 1, 100, outputWait, false, Map.of());
+        interrupted.start(new CompletableFuture<>());
+        interrupted.send("k1", bytes(1));
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedIOException.class, () -> interrupted.send("k2", bytes(1)));
+        assertTrue(Thread.interrupted());
+        assertFalse(interrupted.finish());
+    }
+
+    private ZipJob job(boolean checkpoints, Map<String, ZipProcessor.EntryProgress> resumeFrom) {
+        return new ZipJob("job", "{}", 0, 100, 1000, outputWait, checkpoints, resumeFrom);
+    }
+
+    private static byte[] bytes(int length) {
+        return new byte[length];
+    }
+}
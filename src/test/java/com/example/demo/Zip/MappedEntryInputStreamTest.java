@@ -0,0 +1,167 @@
+package com.example.demo.Zip;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedEntryInputStreamTest {
+    private static final int FILE_SIZE = 100;
+    // the region read, from offset 5 to 75, spans five windows of 16 bytes, the last one partly
+    private static final int OFFSET = 5;
+    private static final int LENGTH = 70;
+    private static final int WINDOW = 16;
+
+    @TempDir
+    Path directory;
+    private final byte[] content = new byte[FILE_SIZE];
+    private FileChannel channel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < FILE_SIZE; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        Path file = directory.resolve("entry.bin");
+        Files.write(file, content);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        channel.close();
+    }
+
+    @Test
+    void readsTheRegionAcrossWindows() throws IOException {
+        // buffer sizes below, at and above the window size, and one that doesn't divide it
+        for (int bufferSize : new int[]{1, 7, WINDOW, 50, 200}) {
+            try (InputStream in = stream()) {
+                assertArrayEquals(region(), readAll(in, bufferSize), "buffer of " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    void readsSingleBytesAcrossWindows() throws IOException {
+        try (InputStream in = stream()) {
+            for (int i = 0; i < LENGTH; i++) {
+                assertEquals(content[OFFSET + i] & 0xFF, in.read(), "byte " + i);
+            }
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[4], 0, 4));
+        }
+    }
+
+    @Test
+    void aReadStopsAtTheEndOfAWindow() throws IOException {
+        try (InputStream in = stream()) {
+            byte[] buffer = new byte[64];
+            assertEquals(WINDOW, in.read(buffer, 0, buffer.length));
+            assertEquals(0, in.available());
+            assertEquals(WINDOW, in.read(buffer, 0, buffer.length));
+            assertEquals(0, in.read(buffer, 0, 0));
+        }
+    }
+
+    @Test
+    void skipsWithinAndAcrossWindows() throws IOException {
+        try (InputStream in = stream()) {
+            // before the first window is mapped
+            assertEquals(3, in.skip(3));
+            assertEquals(content[OFFSET + 3] & 0xFF, in.read());
+            // within the window
+            assertEquals(4, in.skip(4));
+            assertEquals(content[OFFSET + 8] & 0xFF, in.read());
+            // to the last byte of the window
+            assertEquals(6, in.skip(6));
+            assertEquals(content[OFFSET + 15] & 0xFF, in.read());
+            // over two windows, into the middle of the next one
+            assertEquals(WINDOW * 2 + 3, in.skip(WINDOW * 2 + 3));
+            assertEquals(content[OFFSET + 51] & 0xFF, in.read());
+            // past the end, only the rest is skipped
+            assertEquals(LENGTH - 52, in.skip(1000));
+            assertEquals(-1, in.read());
+            assertEquals(0, in.skip(1));
+            assertEquals(0, in.skip(-1));
+        }
+    }
+
+    @Test
+    void readsAfterASkipLikeAPlainStream() throws IOException {
+        for (int skip = 0; skip <= LENGTH; skip++) {
+            try (InputStream in = stream()) {
+                assertEquals(skip, in.skip(skip));
+                assertArrayEquals(Arrays.copyOfRange(region(), skip, LENGTH), readAll(in, 9), "after " + skip);
+            }
+        }
+    }
+
+    @Test
+    void theDefaultWindowCoversSmallEntriesAtOnce() throws IOException {
+        try (InputStream in = new MappedEntryInputStream(channel, OFFSET, LENGTH)) {
+            byte[] buffer = new byte[LENGTH + 10];
+            assertEquals(LENGTH, in.read(buffer, 0, buffer.length));
+            assertArrayEquals(region(), Arrays.copyOf(buffer, LENGTH));
+        }
+    }
+
+    @Test
+    void aClosedStreamCantBeRead() throws IOException {
+        InputStream in = stream();
+        assertEquals(content[OFFSET] & 0xFF, in.read());
+        in.close();
+        assertThrows(IOException.class, in::read);
+        assertThrows(IOException.class, () -> in.read(new byte[4], 0, 4));
+        assertThrows(IOException.class, () -> in.skip(1));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void aFileTruncatedUnderTheMappingIsAnIOException() throws IOException {
+        // pages of its own, a page past the end of the file is no longer backed once it is truncated
+        byte[] large = new byte[1 << 20];
+        Path file = directory.resolve("large.bin");
+        Files.write(file, large);
+        try (FileChannel largeChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             InputStream in = new MappedEntryInputStream(largeChannel, 0, large.length)) {
+            assertEquals(0, in.read());
+            largeChannel.truncate(0);
+            IOException e = assertThrows(IOException.class, () -> readAll(in, 4096));
+            assertInstanceOf(InternalError.class, e.getCause());
+        }
+    }
+
+    private InputStream stream() {
+        return new MappedEntryInputStream(channel, OFFSET, LENGTH, WINDOW);
+    }
+
+    private byte[] region() {
+        return Arrays.copyOfRange(content, OFFSET, OFFSET + LENGTH);
+    }
+
+    private static byte[] readAll(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int read;
+        while ((read = in.read(buffer, 0, bufferSize)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
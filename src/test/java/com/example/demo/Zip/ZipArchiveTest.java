@@ -0,0 +1,70 @@
+package com.example.demo.Zip;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipArchiveTest {
+    private static final byte[] STORED = "stored,entry\n1,2\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEFLATED = "deflated,entry\n3,4\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedEntriesAreReadThroughTheMapping() throws IOException {
+        Path zip = directory.resolve("a.zip");
+        try (OutputStream file = Files.newOutputStream(zip);
+             ZipOutputStream out = new ZipOutputStream(file)) {
+            ZipEntry stored = new ZipEntry("a.csv");
+            CRC32 crc = new CRC32();
+            crc.update(STORED);
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(STORED.length);
+            stored.setCompressedSize(STORED.length);
+            stored.setCrc(crc.getValue());
+            // the data starts behind the extra field of the local header
+            stored.setExtra(new byte[]{(byte) 0xCA, (byte) 0xFE, 4, 0, 1, 2, 3, 4});
+            out.putNextEntry(stored);
+            out.write(STORED);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("b.csv"));
+            out.write(DEFLATED);
+            out.closeEntry();
+        }
+
+        try (ZipArchive archive = ZipArchive.open(zip.toString())) {
+            assertEquals(List.of("a.csv", "b.csv"), archive.entries().stream().map(ZipArchiveEntry::getName).toList());
+            ZipArchiveEntry a = archive.entry("a.csv");
+            ZipArchiveEntry b = archive.entry("b.csv");
+            assertNull(archive.entry("c.csv"));
+            assertTrue(archive.isStored(a));
+            assertFalse(archive.isStored(b));
+            try (InputStream in = archive.open(a)) {
+                assertInstanceOf(MappedEntryInputStream.class, in);
+                assertArrayEquals(STORED, in.readAllBytes());
+            }
+            try (InputStream in = archive.open(b)) {
+                assertArrayEquals(DEFLATED, in.readAllBytes());
+            }
+        }
+    }
+}